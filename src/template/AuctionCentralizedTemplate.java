@@ -2,12 +2,13 @@ package template;
 
 //the list of imports
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
 
+import logist.LogistPlatform;
+import logist.LogistSettings;
 import logist.Measures;
 import logist.behavior.AuctionBehavior;
 import logist.agent.Agent;
@@ -32,23 +33,33 @@ public class AuctionCentralizedTemplate implements AuctionBehavior {
 	private static final long MIN_TASKS_FOR_SPECULATION = 5;
 	private static final long MIN_TASKS_FOR_CENTRALIZED = 20;
 	private static final int NB_CENTRALIZED_RUN = 3;
+	// The opponent is estimated from its previous solution, which needs less
+	private static final int OPPONENT_MAX_ITER = INIT_MAX_ITER / 5;
 	private static final int WINDOW_SIZE = 10;
 	private static final double GUESS_ACCEPTANCE_PERCENT = 0.4;
 	private static final double BID_MARGIN_STEP_PERCENT = 0.05;
 	private static final double BID_MIN_MARGIN_PERCENT = 0.05;
 	private static final double BID_MAX_MARGIN_PERCENT = 0.5;
+	private static final double TIME_MARGIN_BID = 0.95;
+
+	private static final double TIMEOUT_BID = LogistPlatform.getSettings().get(LogistSettings.TimeoutKey.BID);
 
 	private Topology topology;
 	private TaskDistribution distribution;
 	private Agent agent;
 	private Random random;
+	private SplittableRandom searchRandom;
 	private Vehicle vehicle;
 	private City currentCity;
+	private CostModel costModel;
+	private PlanBuilder planBuilder;
+	private SolverMetrics metrics;
+	private MultiStartSearch multiStart;
 
 	private long nbTasksHandled = 0;
 	private double avgTasksWork = 0;
 
-	private HashSet<Task> ourTasks = new HashSet<Task>();
+	private TaskRegistry registry = new TaskRegistry();
 	private long ourTotalReward = 0;
 	private double ourLastCost = 0;
 	private double ourTempCost = 0;
@@ -57,21 +68,20 @@ public class AuctionCentralizedTemplate implements AuctionBehavior {
 	private Long lastGuess = 0l;
 	private int ournbTasksHandled = 0;
 	//private LinkedList<Long> ourLastGuesses = new LinkedList<Long>();
-	private Centralized us = new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER);
+	private Centralized us;
 	private Solution ourBestSolution = null;
 
-	private HashSet<Task> theirTasks = new HashSet<Task>();
-	private double theirLastCost = 0;
-	private double theirTempCost = 0;
-	private long theirTotalReward = 0;
-	private LinkedList<Long> theirLastBids = new LinkedList<Long>();
-	private Centralized them = new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER);
+	// One model per other agent, created with the first result (the number of
+	// agents is not known before)
+	private OpponentModel[] opponents = new OpponentModel[0];
+	private Centralized them;
 
 	@Override
 	public void setup(Topology topology, TaskDistribution distribution,
 			Agent agent) {
 
 		this.topology = topology;
+		this.planBuilder = new PlanBuilder(topology);
 		this.distribution = distribution;
 		this.agent = agent;
 		this.vehicle = agent.vehicles().get(0);
@@ -79,78 +89,115 @@ public class AuctionCentralizedTemplate implements AuctionBehavior {
 
 		long seed = -9019554669489983951L * currentCity.hashCode() * agent.id();
 		this.random = new Random(seed);
+		this.searchRandom = new SplittableRandom(seed);
+
+		this.costModel = new CostModel(topology, agent.vehicles());
+		this.metrics = new SolverMetrics();
+		this.metrics.register(agent.name(), agent.id(), SolverMetrics.BID_SOLVER);
+		this.us = new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER, costModel, metrics);
+		this.them = new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER, costModel, metrics);
+		this.multiStart = new MultiStartSearch();
 	}
 
 	@Override
 	public void auctionResult(Task previous, int winner, Long[] bids) {
 		Long ourBid = bids[agent.id()];
-		// Dangerous if more than 2 companies or only us
-		Long theirBid = bids[1 - agent.id()];
+		if (opponents.length != bids.length) {
+			opponents = OpponentModel.forAgents(bids.length, agent.id(), them, costModel, agent.vehicles(), WINDOW_SIZE);
+		}
+		for (OpponentModel opponent : opponents) {
+			if (opponent != null) {
+				opponent.auctionResult(previous, winner, bids[opponent.getAgentId()]);
+			}
+		}
 
 		if (winner == agent.id()) {
 			//currentCity = previous.deliveryCity;
 			ournbTasksHandled++;
 			ourTotalReward += ourBid;
 			ourLastCost = ourTempCost;
-
-			// Remove task
-			for (Iterator<Task> i = theirTasks.iterator(); i.hasNext();) {
-			    Task element = i.next();
-			    if (element.id == previous.id) {
-			        i.remove();
-			        break;
-			    }
-			}
-		} else {
-			// Remove task
-			for (Iterator<Task> i = ourTasks.iterator(); i.hasNext();) {
-			    Task element = i.next();
-			    if (element.id == previous.id) {
-			        i.remove();
-			        break;
-			    }
-			}
-
-			// Dangerous if more than 2 companies or only us
-			theirTotalReward += theirBid;
-			theirLastCost = theirTempCost;
+			registry.setOwner(previous, agent.id());
+		} else if (winner >= 0) {
+			registry.setOwner(previous, winner);
 		}
 	}
 
 	@Override
 	public Long askPrice(Task task) {
-		// US
-		ourTasks.add(task);
-		ourTempCost = 0;
+		long bidStart = System.nanoTime();
+		long deadline = SearchBudget.deadlineIn(TIME_MARGIN_BID * TIMEOUT_BID);
+
+		Instance ourInstance = new Instance(costModel, agent.vehicles(), registry.getTasksWith(agent.id(), task));
+
+		// Our runs and the ones refining the solution of each opponent, all at
+		// the same time and under the same deadline
+		List<Callable<Solution>> runs = new ArrayList<Callable<Solution>>();
+		List<SearchBudget> budgets = new ArrayList<SearchBudget>();
 		for (int i = 0; i < NB_CENTRALIZED_RUN; i++) {
-			Solution ourNewSol = us.computeCentralized(agent.vehicles(), ourTasks);
-			ourTempCost += ourNewSol.getTotalCost();
+			SplittableRandom runRandom = searchRandom.split();
+			SearchBudget budget = new SearchBudget(INIT_MAX_ITER, deadline);
+			runs.add(() -> us.computeCentralized(ourInstance, null, budget, runRandom));
+			budgets.add(budget);
+		}
+		for (OpponentModel opponent : opponents) {
+			if (opponent != null) {
+				SearchBudget budget = new SearchBudget(OPPONENT_MAX_ITER, deadline);
+				runs.add(opponent.estimate(task, budget, searchRandom.split()));
+				budgets.add(budget);
+			}
 		}
-		ourTempCost /= NB_CENTRALIZED_RUN;
+		List<Solution> results = multiStart.run(runs, budgets, deadline);
 
-		Long ourMarginalCost = ourLastCost == 0 ? Math.round(ourTempCost) :
-							Math.max(0, Math.round(ourTempCost - ourLastCost));
+		// US
+		ourTempCost = meanCost(results.subList(0, NB_CENTRALIZED_RUN), ourInstance);
 
 		//THEM
-		theirTasks.add(task);
-		theirTempCost = 0;
-		for (int i = 0; i < NB_CENTRALIZED_RUN; i++) {
-			Solution theirNewSol = them.computeCentralized(agent.vehicles(), theirTasks);
-			theirTempCost += theirNewSol.getTotalCost();
+		// The cheapest opponent is the one to beat, null before the first result
+		// or if no opponent could carry the task
+		Long theirMarginalCost = null;
+		int next = NB_CENTRALIZED_RUN;
+		for (OpponentModel opponent : opponents) {
+			if (opponent != null) {
+				opponent.setRefined(results.get(next++));
+				if (Double.isInfinite(opponent.getMarginalCost())) {
+					continue;
+				}
+				long marginalCost = Math.round(opponent.getMarginalCost());
+				if (theirMarginalCost == null || marginalCost < theirMarginalCost) {
+					theirMarginalCost = marginalCost;
+				}
+			}
+		}
+
+		if (Double.isInfinite(ourTempCost)) {
+			// None of our vehicles can carry the task, we do not bid
+			return null;
 		}
-		theirTempCost /= NB_CENTRALIZED_RUN;
+		Long ourMarginalCost = ourLastCost == 0 ? Math.round(ourTempCost) :
+							Math.max(0, Math.round(ourTempCost - ourLastCost));
 
-		Long theirMarginalCost = theirLastCost == 0 ? Math.round(theirTempCost) :
-							Math.max(0, Math.round(theirTempCost - theirLastCost));
+		long strategyStart = System.nanoTime();
+		metrics.recordPhase(SolverMetrics.SEARCH, strategyStart - bidStart);
+		int nbCompleted = 0;
+		for (Solution result : results) {
+			if (result != null) {
+				nbCompleted++;
+			}
+		}
+		metrics.recordBid(nbCompleted, runs.size(), strategyStart >= deadline, ourTempCost);
 
 		lastGuessUseMargin = false;
 		Long toBid = ourMarginalCost;
-		if (ourMarginalCost < theirMarginalCost) {
+		if (theirMarginalCost != null && ourMarginalCost < theirMarginalCost) {
 			toBid += (long) ((theirMarginalCost - ourMarginalCost) * (1 - 0.1));
 		}
 
 		nbTasksHandled++;
 
+		long bidEnd = System.nanoTime();
+		metrics.recordPhase(SolverMetrics.STRATEGY, bidEnd - strategyStart);
+		metrics.recordPhase(SolverMetrics.BID, bidEnd - bidStart);
+
 		return toBid;
 
 		/*
@@ -173,15 +220,19 @@ public class AuctionCentralizedTemplate implements AuctionBehavior {
 	@Override
 	public List<Plan> plan(List<Vehicle> vehicles, TaskSet tasks) {
 
+		// No more bids to compute
+		multiStart.shutdown();
+		metrics.unregister();
+
 		if (!tasks.isEmpty()) {
-			Solution sol = us.computeCentralized(vehicles, tasks);
+			Solution sol = us.computeCentralized(vehicles, tasks, searchRandom.split());
 			System.out.println("Agent: " + agent.name());
 			System.out.println("Total reward for agent " + agent.id() + " is : " + ourTotalReward);
 			System.out.println("Total cost for agent " + agent.id() + " is : " + sol.getTotalCost());
 			System.out.println("Total benefice for agent " + agent.id() + " is : " + (ourTotalReward - sol.getTotalCost()));
 			System.out.println();
 
-			return createPlanFromSolution(sol);
+			return planBuilder.build(sol);
 		}
 		else {
 			// If nothing
@@ -208,34 +259,32 @@ public class AuctionCentralizedTemplate implements AuctionBehavior {
 	}
 
 
-	private List<Plan> createPlanFromSolution(Solution solution) {
-		List<Plan> toReturn = new ArrayList<Plan>();
-		for (int i = 0; i < solution.getVehiclesFirstTask().length; i++) {
-			AgentTask current = solution.getVehiclesFirstTask()[i];
-			Plan plan = new Plan(solution.getVehicles().get(i).getCurrentCity());
-			City currentCity = solution.getVehicles().get(i).getCurrentCity();
-			while (current != null) {
-				if (current.isPickup()) {
-					for (City c : currentCity
-							.pathTo(current.getTask().pickupCity)) {
-						plan.appendMove(c);
-					}
-					plan.appendPickup(current.getTask());
-					currentCity = current.getTask().pickupCity;
-				} else {
-					for (City c : currentCity
-							.pathTo(current.getTask().deliveryCity)) {
-						plan.appendMove(c);
-					}
-					plan.appendDelivery(current.getTask());
-					currentCity = current.getTask().deliveryCity;
-				}
-				current = current.getNext();
+	// Mean cost of the runs that finished in time. If none did, the cost of
+	// inserting every task where it costs the least, which is quick
+	private double meanCost(List<Solution> solutions, Instance instance) {
+		double sum = 0;
+		int count = 0;
+		for (Solution s : solutions) {
+			if (s != null) {
+				sum += s.getTotalCost();
+				count++;
 			}
-			toReturn.add(plan);
+		}
+		if (count > 0) {
+			return sum / count;
 		}
 
-		return toReturn;
+		Solution solution = new Solution(instance);
+		InsertMove insertion = new InsertMove();
+		for (int slot = 0; slot < instance.getTaskNumber(); slot++) {
+			insertion.set(slot);
+			if (!insertion.evaluate(solution)) {
+				// No vehicle can carry it
+				return Double.POSITIVE_INFINITY;
+			}
+			insertion.apply(solution);
+		}
+		return solution.getTotalCost();
 	}
 
 	private Plan naivePlan(Vehicle vehicle, TaskSet tasks) {
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 import logist.Measures;
 import logist.behavior.AuctionBehavior;
@@ -29,19 +30,23 @@ public class AuctionDummyTemplate implements AuctionBehavior {
 	private TaskDistribution distribution;
 	private Agent agent;
 	private Random random;
+	private SplittableRandom searchRandom;
 	private Vehicle vehicle;
 	private City currentCity;
+	private CostModel costModel;
+	private PlanBuilder planBuilder;
 	
 	private long totalReward = 0;
 	private int INIT_POOL_SIZE = 10;
 	private int INIT_MAX_ITER = 10000;
-	private Centralized us = new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER);
+	private Centralized us;
 
 	@Override
 	public void setup(Topology topology, TaskDistribution distribution,
 			Agent agent) {
 
 		this.topology = topology;
+		this.planBuilder = new PlanBuilder(topology);
 		this.distribution = distribution;
 		this.agent = agent;
 		this.vehicle = agent.vehicles().get(0);
@@ -49,6 +54,10 @@ public class AuctionDummyTemplate implements AuctionBehavior {
 
 		long seed = -9019554669489983951L * currentCity.hashCode() * agent.id();
 		this.random = new Random(seed);
+		this.searchRandom = new SplittableRandom(seed);
+
+		this.costModel = new CostModel(topology, agent.vehicles());
+		this.us = new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER, costModel);
 	}
 
 	@Override
@@ -83,14 +92,14 @@ public class AuctionDummyTemplate implements AuctionBehavior {
 	public List<Plan> plan(List<Vehicle> vehicles, TaskSet tasks) {
 
 		if (!tasks.isEmpty()) {
-			Solution sol = us.computeCentralized(vehicles, tasks);
+			Solution sol = us.computeCentralized(vehicles, tasks, searchRandom.split());
 			System.out.println("Agent: " + agent.name());
 			System.out.println("Total reward for agent " + agent.id() + " is : " + totalReward);
 			System.out.println("Total cost for agent " + agent.id() + " is : " + sol.getTotalCost());
 			System.out.println("Total benefice for agent " + agent.id() + " is : " + (totalReward - sol.getTotalCost()));
 			System.out.println();
 			
-			return createPlanFromSolution(sol);
+			return planBuilder.build(sol);
 		}
 		else {
 			// If nothing
@@ -117,36 +126,6 @@ public class AuctionDummyTemplate implements AuctionBehavior {
 	}
 
 
-	private List<Plan> createPlanFromSolution(Solution solution) {
-		List<Plan> toReturn = new ArrayList<Plan>();
-		for (int i = 0; i < solution.getVehiclesFirstTask().length; i++) {
-			AgentTask current = solution.getVehiclesFirstTask()[i];
-			Plan plan = new Plan(solution.getVehicles().get(i).getCurrentCity());
-			City currentCity = solution.getVehicles().get(i).getCurrentCity();
-			while (current != null) {
-				if (current.isPickup()) {
-					for (City c : currentCity
-							.pathTo(current.getTask().pickupCity)) {
-						plan.appendMove(c);
-					}
-					plan.appendPickup(current.getTask());
-					currentCity = current.getTask().pickupCity;
-				} else {
-					for (City c : currentCity
-							.pathTo(current.getTask().deliveryCity)) {
-						plan.appendMove(c);
-					}
-					plan.appendDelivery(current.getTask());
-					currentCity = current.getTask().deliveryCity;
-				}
-				current = current.getNext();
-			}
-			toReturn.add(plan);
-		}
-
-		return toReturn;
-	}
-
 	private Plan naivePlan(Vehicle vehicle, TaskSet tasks) {
 		City current = vehicle.getCurrentCity();
 		Plan plan = new Plan(current);
@@ -0,0 +1,290 @@
+package template;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Events of the auctions (bids, results, marginal costs, runs of the search),
+ * written to a sink by a background thread so that the agent never waits for
+ * the console or a file while bidding.
+ *
+ * Events are stored as primitive fields in a ring allocated once: the agent
+ * thread, the only one to log, fills a slot and publishes it, the writer thread
+ * formats the slots it has not seen yet, and parks when it has caught up
+ * until the agent publishes again. An event of a disabled level returns right
+ * away, and an event that finds the ring full is dropped (and counted) rather
+ * than blocking the bid.
+ *
+ * The sink is opened by the writer thread, which only starts if the log is
+ * enabled, and closed when the log is.
+ */
+public class AuctionLog {
+
+	public static final int OFF = 0;
+	public static final int INFO = 1;
+	public static final int DEBUG = 2;
+
+	// Where the formatted events go, from the writer thread only
+	public interface Sink {
+		void open() throws IOException;
+
+		void write(CharSequence line) throws IOException;
+
+		void flush() throws IOException;
+
+		void close() throws IOException;
+	}
+
+	private static final int RESULT = 0;
+	private static final int BASELINE = 1;
+	private static final int RUN = 2;
+	private static final int DEADLINE = 3;
+	private static final int MARGINAL = 4;
+	private static final int FLOOR = 5;
+	private static final int BID = 6;
+
+	// Opens the writer of a sink
+	private interface WriterOpener {
+		Writer open() throws IOException;
+	}
+
+	private final int level;
+	private final Sink sink;
+	private final String prefix;
+	private final int capacity;
+	private final long start = System.nanoTime();
+
+	// The ring of events
+	private final int[] kinds;
+	private final long[] times;
+	private final int[] tasks;
+	private final long[] firsts;
+	private final long[] seconds;
+	private final double[] values;
+
+	// Events published by the agent, and written
+	private volatile long head = 0;
+	private volatile long tail = 0;
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile boolean running = true;
+	// Whether the writer is parked, or about to, waiting for events
+	private volatile boolean waiting = false;
+	private final Thread writer;
+	private final StringBuilder line = new StringBuilder();
+
+	public AuctionLog(int level, Sink sink, String prefix, int capacity) {
+		this.level = level;
+		this.sink = sink;
+		this.prefix = prefix;
+		this.capacity = capacity;
+		this.kinds = new int[capacity];
+		this.times = new long[capacity];
+		this.tasks = new int[capacity];
+		this.firsts = new long[capacity];
+		this.seconds = new long[capacity];
+		this.values = new double[capacity];
+
+		this.writer = new Thread(this::write, "auction-log");
+		this.writer.setDaemon(true);
+		if (level > OFF) {
+			this.writer.start();
+		}
+	}
+
+	public static int parseLevel(String level) {
+		switch (level.toLowerCase(Locale.ROOT)) {
+		case "off":
+			return OFF;
+		case "debug":
+			return DEBUG;
+		default:
+			return INFO;
+		}
+	}
+
+	public static Sink console() {
+		return writerSink(() -> new BufferedWriter(new OutputStreamWriter(System.out)), false);
+	}
+
+	public static Sink file(final File file) {
+		return writerSink(() -> new BufferedWriter(new FileWriter(file)), true);
+	}
+
+	private static Sink writerSink(final WriterOpener opener, final boolean closeOut) {
+		return new Sink() {
+			private Writer out;
+
+			@Override
+			public void open() throws IOException {
+				out = opener.open();
+			}
+
+			@Override
+			public void write(CharSequence line) throws IOException {
+				out.append(line).append(System.lineSeparator());
+			}
+
+			@Override
+			public void flush() throws IOException {
+				out.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				out.flush();
+				if (closeOut) {
+					out.close();
+				}
+			}
+		};
+	}
+
+	public boolean isEnabled(int eventLevel) {
+		return eventLevel <= level;
+	}
+
+	// Bids are null for agents that did not bid, we log them as -1
+	public void result(int task, int winner, Long ourBid, Long theirBid) {
+		publish(INFO, RESULT, task, ourBid == null ? -1 : ourBid, theirBid == null ? -1 : theirBid, winner);
+	}
+
+	public void baseline(int task, double lastCost, double bestCost) {
+		publish(INFO, BASELINE, task, Math.round(lastCost), 0, bestCost);
+	}
+
+	public void run(int task, int index, double cost) {
+		publish(DEBUG, RUN, task, index, 0, cost);
+	}
+
+	public void deadline(int task, int runsDone, int runs) {
+		publish(INFO, DEADLINE, task, runsDone, runs, 0);
+	}
+
+	public void marginal(int task, long marginalCost, double totalCost) {
+		publish(INFO, MARGINAL, task, marginalCost, 0, totalCost);
+	}
+
+	// The bid was raised to the floor given by the bids of the other agent
+	public void floor(int task, long from, long to) {
+		publish(INFO, FLOOR, task, from, to, 0);
+	}
+
+	public void bid(int task, long bid) {
+		publish(INFO, BID, task, bid, 0, 0);
+	}
+
+	private void publish(int eventLevel, int kind, int task, long first, long second, double value) {
+		if (eventLevel > level) {
+			return;
+		}
+		long slot = head;
+		if (slot - tail >= capacity) {
+			dropped.incrementAndGet();
+			return;
+		}
+		int i = (int) (slot % capacity);
+		kinds[i] = kind;
+		times[i] = System.nanoTime();
+		tasks[i] = task;
+		firsts[i] = first;
+		seconds[i] = second;
+		values[i] = value;
+		// Publish the slot to the writer, and wake it up if it waits
+		head = slot + 1;
+		if (waiting) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	// Write what is left and stop the writer
+	public void close() {
+		if (!writer.isAlive()) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void write() {
+		try {
+			sink.open();
+			while (running || tail < head) {
+				long available = head;
+				if (tail == available) {
+					sink.flush();
+					// Announce the wait before checking again, so that an event
+					// published meanwhile either is seen here or unparks us
+					waiting = true;
+					if (running && tail == head) {
+						LockSupport.park(this);
+					}
+					waiting = false;
+					continue;
+				}
+				for (long slot = tail; slot < available; slot++) {
+					format((int) (slot % capacity));
+					sink.write(line);
+				}
+				tail = available;
+			}
+			if (dropped.get() > 0) {
+				line.setLength(0);
+				line.append(prefix).append(" dropped ").append(dropped.get()).append(" events");
+				sink.write(line);
+			}
+			sink.close();
+		} catch (IOException e) {
+			System.out.println("Cannot write the auction log: " + e.getMessage());
+		}
+	}
+
+	private void format(int i) {
+		line.setLength(0);
+		line.append('[').append((times[i] - start) / 1000000).append(" ms] ").append(prefix).append(' ');
+		switch (kinds[i]) {
+		case RESULT:
+			line.append("result task=").append(tasks[i]).append(" winner=").append((int) values[i])
+					.append(" ours=").append(firsts[i]).append(" theirs=").append(seconds[i]);
+			break;
+		case BASELINE:
+			line.append("baseline task=").append(tasks[i]).append(" lastCost=").append(firsts[i])
+					.append(" bestCost=").append(Math.round(values[i]));
+			break;
+		case RUN:
+			line.append("run task=").append(tasks[i]).append(" index=").append(firsts[i])
+					.append(" cost=").append(Math.round(values[i]));
+			break;
+		case DEADLINE:
+			line.append("deadline task=").append(tasks[i]).append(" runs=").append(firsts[i])
+					.append('/').append(seconds[i]);
+			break;
+		case MARGINAL:
+			line.append("marginal task=").append(tasks[i]).append(" cost=").append(firsts[i])
+					.append(" total=").append(Math.round(values[i]));
+			break;
+		case FLOOR:
+			line.append("floor task=").append(tasks[i]).append(" from=").append(firsts[i])
+					.append(" to=").append(seconds[i]);
+			break;
+		case BID:
+			line.append("bid task=").append(tasks[i]).append(" value=").append(firsts[i]);
+			break;
+		default:
+			line.append("unknown event ").append(kinds[i]);
+		}
+	}
+
+}
@@ -1,14 +1,12 @@
 package template;
 
 //the list of imports
+import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
 
 import logist.LogistPlatform;
 import logist.LogistSettings;
@@ -42,6 +40,8 @@ public class AuctionTemplate implements AuctionBehavior {
 	private static final double BID_MAX_MARGIN_PERCENT = 0.5;
 	
 	private static final long MIN_BID = 50;
+	// Auction events kept until the log writer gets to them
+	private static final int LOG_CAPACITY = 4096;
 	
 	private static final double TIMEOUT_BID = LogistPlatform.getSettings().get(LogistSettings.TimeoutKey.BID);
 
@@ -49,12 +49,18 @@ public class AuctionTemplate implements AuctionBehavior {
 	private TaskDistribution distribution;
 	private Agent agent;
 	private Random random;
+	private SplittableRandom searchRandom;
 	private Vehicle vehicle;
 	private City currentCity;
+	private CostModel costModel;
+	private PlanBuilder planBuilder;
+	private SolverMetrics metrics;
+	private SolverMetrics backgroundMetrics;
+	private AuctionLog log;
 
 	private long nbTasksHandled = 0;
 
-	private HashSet<Task> ourTasks = new HashSet<Task>();
+	private TaskRegistry registry = new TaskRegistry();
 	private long ourTotalReward = 0;
 	private double ourLastCost = 0;
 	private double ourTempCost = 0;
@@ -62,35 +68,37 @@ public class AuctionTemplate implements AuctionBehavior {
 	private boolean lastGuessUseMargin = false;
 	private Long lastGuess = 0l;
 	private int ournbTasksHandled = 0;
-	private Centralized us = new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER);
+	private Centralized us;
+	private MultiStartSearch multiStart;
+	private BackgroundOptimizer optimizer;
+	private InsertMove insertion = new InsertMove();
 	private Solution bestSolution = null;
 	private Solution newBestSol = null;
 
-	private HashSet<Task> theirTasks = new HashSet<Task>();
-	private long theirTotalReward = 0;
-	private LinkedList<Long> theirLastBids = new LinkedList<Long>();
-	private Centralized them = new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER);
+	// One model per other agent, created with the first result (the number of
+	// agents is not known before). Only their bids are followed, their costs
+	// are not estimated
+	private OpponentModel[] opponents = new OpponentModel[0];
 
-	private double averageEdgeWeight = 0.;
 	private static final double MAX_VARIANCE_WEIGHT = 0.4;
+	private PathWeights pathWeights;
 	private static final double PREDICTION_ERROR_MARGIN = 0.15;
-	private static final double TIME_MARGIN_BID = 0.8;
+	private static final double TIME_MARGIN_BID = 0.95;
 	private static final double EXPLORATION_RATE = 0.2;
 	
 	// Optimizations
 	private static final boolean EDGE_WEIGHT_OPTI = true;
 	private static final boolean SPECULATION_OPTI = true;
 
-	private Map<EdgeCity, Double> weights = new HashMap<EdgeCity, Double>();
 
 
-	HashMap<Pair<String, String>, Long> lastBiddingOponent = new HashMap<Pair<String,String>, Long>();
 
 	@Override
 	public void setup(Topology topology, TaskDistribution distribution,
 			Agent agent) {
 
 		this.topology = topology;
+		this.planBuilder = new PlanBuilder(topology);
 		this.distribution = distribution;
 		this.agent = agent;
 		this.vehicle = agent.vehicles().get(0);
@@ -98,209 +106,186 @@ public class AuctionTemplate implements AuctionBehavior {
 
 		long seed = -9019554669489983951L * currentCity.hashCode() * agent.id();
 		this.random = new Random(seed);
-
-		for (City c1 : topology.cities()) {
-			for (City c2 : topology.cities()) {
-				List<City> path = c1.pathTo(c2);
-				double prob = distribution.probability(c1, c2) / topology.cities().size();
-				if (prob > 0) {
-					for (int i = 0; i < path.size(); i++) {
-						City previous;
-						if (i == 0) {
-							previous = c1;
-						}
-						else {
-							previous = path.get(i - 1);
-						}
-						City current = path.get(i);
-						EdgeCity ec = new EdgeCity(previous, current, previous.distanceTo(current));
-						Double weight = weights.get(ec);
-						if (weight == null) {
-							weight = 0d;
-						}
-						weights.put(ec, weight + prob);
-					}
-				}
-			}
-		}
-
-		for (Map.Entry<EdgeCity, Double> entry : weights.entrySet()) {
-			averageEdgeWeight += entry.getValue();
-		}
-		averageEdgeWeight /= weights.size();
+		this.searchRandom = new SplittableRandom(seed);
+
+		this.costModel = new CostModel(topology, agent.vehicles());
+		this.metrics = new SolverMetrics();
+		this.metrics.register(agent.name(), agent.id(), SolverMetrics.BID_SOLVER);
+		this.backgroundMetrics = new SolverMetrics();
+		this.backgroundMetrics.register(agent.name(), agent.id(), SolverMetrics.BACKGROUND_SOLVER);
+		this.log = createLog(agent);
+		this.us = new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER, costModel, metrics);
+		this.multiStart = new MultiStartSearch();
+		// The background runs count apart from the ones of the bids
+		this.optimizer = new BackgroundOptimizer(new Centralized(INIT_POOL_SIZE, INIT_MAX_ITER, costModel, backgroundMetrics),
+				searchRandom.split());
+		this.optimizer.start();
+
+		this.pathWeights = new PathWeights(topology, distribution);
 	}
 
 	@Override
 	public void auctionResult(Task previous, int winner, Long[] bids) {
 		Long ourBid = bids[agent.id()];
-		// Dangerous if more than 2 companies or only us
-		Long theirBid = bids[1 - agent.id()];
-
-		System.out.println();
-		System.out.println("Our bid: " + ourBid);
-		System.out.println("Their bid: " + theirBid);
-
-		// Add bid to history of their bids
-		if (theirLastBids.size() >= WINDOW_SIZE) {
-			theirLastBids.remove();
+		if (opponents.length != bids.length) {
+			opponents = OpponentModel.forAgents(bids.length, agent.id(), null, costModel, agent.vehicles(), WINDOW_SIZE);
 		}
-		
-		if (theirBid != null) {
-			theirLastBids.add(theirBid);
+
+		// Add bids to the history of each opponent
+		Long theirBid = null;
+		for (OpponentModel opponent : opponents) {
+			if (opponent != null) {
+				Long bid = bids[opponent.getAgentId()];
+				opponent.auctionResult(previous, winner, bid);
+				if (bid != null && (theirBid == null || bid < theirBid)) {
+					theirBid = bid;
+				}
+			}
 		}
 
+		log.result(previous.id, winner, ourBid, theirBid);
+
 		if (winner == agent.id()) {
 			//currentCity = previous.deliveryCity;
-			System.out.println("Our agent won by bidding: " + ourBid);
 			ournbTasksHandled++;
 			ourTotalReward += ourBid;
 			ourLastCost = ourTempCost;
 
-			// Remove task
-			for (Iterator<Task> i = theirTasks.iterator(); i.hasNext();) {
-			    Task element = i.next();
-			    if (element.id == previous.id) {
-			        i.remove();
-			        break;
-			    }
-			}
-			
+			registry.setOwner(previous, agent.id());
 
-			// refresh the new best Solution
+			// refresh the new best Solution, and keep improving it until the
+			// next auction
 			bestSolution = newBestSol;
 			newBestSol = null;
+			optimizer.commit(bestSolution);
 			
-		} else {
-			if (theirBid != null) {
-				System.out.println("The other agent won by bidding: " + theirBid);
-			}
-
-			// Remove task
-			for (Iterator<Task> i = ourTasks.iterator(); i.hasNext();) {
-			    Task element = i.next();
-			    if (element.id == previous.id) {
-			        i.remove();
-			        break;
-			    }
-			}
-
-			// Dangerous if more than 2 companies or only us
-			if (theirBid != null) {
-				theirTotalReward += theirBid;
-			}
-		}
-		System.out.println("******************************************************");
-		
-		// update the last bid for this task
-		if (theirBid != null) {
-			lastBiddingOponent.put(new Pair<String, String>(previous.pickupCity.name, previous.deliveryCity.name), theirBid);
+		} else if (winner >= 0) {
+			registry.setOwner(previous, winner);
 		}
 	}
 
 	@Override
 	public Long askPrice(Task task) {
-		long start = System.currentTimeMillis();
+		long bidStart = System.nanoTime();
+		long deadline = SearchBudget.deadlineIn(TIME_MARGIN_BID * TIMEOUT_BID);
+
+		// Leave the cores to the bid, and start from what was found meanwhile
+		optimizer.pause();
+		takeOptimizedSolution();
 		
 		double projectedValue = 0d;
 		if (EDGE_WEIGHT_OPTI) {
-			// Compute biased value by looking at the weight of the path
-			Double sum = 0d;
-			City current = task.pickupCity;
-			for (City next : task.pickupCity.pathTo(task.deliveryCity)) {
-				EdgeCity ec = new EdgeCity(current, next, current.distanceTo(next));
-
-				Double value = weights.get(ec);
-				if (value == null) {
-					value = 0d;
-				}
-
-				sum += value;
-				current = next;
-			}
-
-			sum /= task.pickupCity.pathTo(task.deliveryCity).size();
-
-			// Value between 0 and 2 (included)
-			double croppedValue = Math.min(2.0, Math.max(0d, (sum / averageEdgeWeight)));
+			// Compute biased value by looking at the weight of the path, the
+			// ratio being between 0 and 2 (included)
+			double ratio = pathWeights.getRatio(task.pickupCity.id, task.deliveryCity.id);
 			// Should be between -(MAX_VARIANCE_WEIGHT / 2) and (MAX_VARIANCE_WEIGHT / 2)
-			projectedValue = croppedValue * (MAX_VARIANCE_WEIGHT / 2) - MAX_VARIANCE_WEIGHT / 2;
+			projectedValue = ratio * (MAX_VARIANCE_WEIGHT / 2) - MAX_VARIANCE_WEIGHT / 2;
 		}
 		
 		// US
-		ourTasks.add(task);
-
 		// we wait to have at least one solution
-		Solution newInitSol = bestSolution == null ? new Solution(0, new AgentTask[agent.vehicles().size()], agent.vehicles(), new int[agent.vehicles().size()]) : bestSolution.clone();
-		// firstly, we only add the new task to the current best solution and try
-		// centralized on it
-		AgentTask p = new AgentTask(task, true);
-		AgentTask d = new AgentTask(task, false);
-		newInitSol.addTaskForVehicle(0, d, null);
-		newInitSol.addTaskForVehicle(0, p, null);
-
-		// we try to find a solution with the old best solution
-		us.setInitSolution(newInitSol);
-		// we try again with the init solution being the last solution computed
-		newBestSol = us.computeCentralized(agent.vehicles(), ourTasks);
-
-		// we get ready to do normal centralized
-		us.setInitSolution(null);
-		
-		// now we try to recompute entierly centralized
-		ourTempCost = 0;
-		int nbCentralizedRun = 1;
-		
-		if (bestSolution != null) {
-			System.out.println("-1. " + ourLastCost + " " + bestSolution.getTotalCost());
+		Instance instance = new Instance(costModel, agent.vehicles(), registry.getTasksWith(agent.id(), task));
+		Solution newInitSol = bestSolution == null ? new Solution(instance) : bestSolution.remapTo(instance);
+		// firstly, we only insert the new task where it costs the least in the
+		// current best solution: its cost is an upper bound of the one we will
+		// bid on, available right away, that centralized then tries to lower
+		insertion.set(instance.getSlot(task.id));
+		if (!insertion.evaluate(newInitSol)) {
+			// No vehicle can carry it, we do not bid (logged as -1)
+			newBestSol = null;
+			optimizer.resume();
+			log.bid(task.id, -1);
+			return null;
 		}
-		
-		System.out.println("0. " + newBestSol.getTotalCost());
-		for (int i = 0; i < NB_CENTRALIZED_RUN; i++) {
-			// Vary init solution
+		insertion.apply(newInitSol);
+
+		long searchStart = System.nanoTime();
+		metrics.recordPhase(SolverMetrics.INSERTION, searchStart - bidStart);
+
+		// we try to find a solution with the old best solution, and in
+		// parallel with new init solutions, alternating both to vary the runs
+		final Solution warmStart = newInitSol;
+		List<Callable<Solution>> runs = new ArrayList<Callable<Solution>>();
+		List<SearchBudget> budgets = new ArrayList<SearchBudget>();
+		SplittableRandom warmRandom = searchRandom.split();
+		SearchBudget warmBudget = new SearchBudget(INIT_MAX_ITER, deadline);
+		runs.add(() -> us.computeCentralized(instance, warmStart, warmBudget, warmRandom));
+		budgets.add(warmBudget);
+		int nbRuns = Math.max(NB_CENTRALIZED_RUN, multiStart.getParallelism() - 1);
+		for (int i = 0; i < nbRuns; i++) {
+			// Split here, in order, so that each run gets the same stream every time
+			SplittableRandom runRandom = searchRandom.split();
 			if (i % 2 == 0) {
-				us.setInitSolution(null);
-				us.setMaxIter((int) (INIT_MAX_ITER * (1 + EXPLORATION_RATE)));
+				SearchBudget budget = new SearchBudget((int) (INIT_MAX_ITER * (1 + EXPLORATION_RATE)), deadline);
+				runs.add(() -> us.computeCentralized(instance, null, budget, runRandom));
+				budgets.add(budget);
 			}
 			else {
-				us.setInitSolution(newInitSol);
-				us.setMaxIter((int) (INIT_MAX_ITER * (1 - EXPLORATION_RATE)));
+				SearchBudget budget = new SearchBudget((int) (INIT_MAX_ITER * (1 - EXPLORATION_RATE)), deadline);
+				runs.add(() -> us.computeCentralized(instance, warmStart, budget, runRandom));
+				budgets.add(budget);
 			}
-			
-			Solution ourNewSol = us.computeCentralized(agent.vehicles(), ourTasks);
-			newBestSol = newBestSol == null || newBestSol.getTotalCost() > ourNewSol.getTotalCost() ? ourNewSol : newBestSol;
-			System.out.println((nbCentralizedRun + 1) + ". " + ourNewSol.getTotalCost());
-			nbCentralizedRun++;
-			double now = (double) (System.currentTimeMillis() - start);
-			if (now / nbCentralizedRun + now > TIME_MARGIN_BID * TIMEOUT_BID) {
-				System.out.println("BREAK! Too much time (iteration " + nbCentralizedRun + ")");
-				break;
+		}
+
+		List<Solution> results = multiStart.run(runs, budgets, deadline);
+		
+		if (bestSolution != null) {
+			log.baseline(task.id, ourLastCost, bestSolution.getTotalCost());
+		}
+
+		int nbCentralizedRun = 0;
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i) != null) {
+				log.run(task.id, i, results.get(i).getTotalCost());
+				nbCentralizedRun++;
 			}
 		}
+		boolean cut = System.nanoTime() >= deadline;
+		if (cut) {
+			log.deadline(task.id, nbCentralizedRun, runs.size());
+		}
+
+		// If no run finished in time, or none did better, we keep the cheapest
+		// insertion
+		newBestSol = MultiStartSearch.best(results);
+		if (newBestSol == null || newBestSol.getTotalCost() > newInitSol.getTotalCost()) {
+			newBestSol = newInitSol;
+		}
 		ourTempCost = newBestSol.getTotalCost();
+		long strategyStart = System.nanoTime();
+		metrics.recordPhase(SolverMetrics.SEARCH, strategyStart - searchStart);
+		metrics.recordBid(nbCentralizedRun, runs.size(), cut, ourTempCost);
 
 		Long ourMarginalCost = ourLastCost == 0 ? Math.round(ourTempCost) :
 							Math.max(0, Math.round(ourTempCost - ourLastCost));
 
 
-		System.out.println("Our marginal cost: " + ourMarginalCost);
+		log.marginal(task.id, ourMarginalCost, ourTempCost);
 
 		lastGuessUseMargin = false;
 		Long toBid = ourMarginalCost;
-		System.out.println("toBid: " + toBid);
 
 		if (nbTasksHandled > 0 && SPECULATION_OPTI) {
-			Pair<String, String> pair = new Pair<String, String>(task.pickupCity.name, task.deliveryCity.name);
-			Long lastOpponentBidForPair = lastBiddingOponent.get(pair);
-			
-			// Check if we would bid too low compared to what the other is normally doing
-			Long minBid = 1l;
-			for (Long l : theirLastBids) {
-				minBid *= l;
+			// Check if we would bid too low compared to what the others are
+			// normally doing, against the one bidding the lowest
+			Long minBid = 0l;
+			Long lastOpponentBidForPair = null;
+			boolean first = true;
+			for (OpponentModel opponent : opponents) {
+				// An opponent that never bid gives no floor
+				if (opponent != null && opponent.getBids().getCount() > 0) {
+					long floor = (long) (Math.round(opponent.getBids().getGeometricMean()) * (1 - PREDICTION_ERROR_MARGIN));
+					if (first || floor < minBid) {
+						first = false;
+						minBid = floor;
+						long lastBid = opponent.getLastBid(task);
+						lastOpponentBidForPair = lastBid < 0 ? null : lastBid;
+					}
+				}
 			}
-			minBid = (long) (Math.round(Math.pow(minBid, 1.0/theirLastBids.size())) * (1 - PREDICTION_ERROR_MARGIN));
 
 			if (toBid < minBid && (lastOpponentBidForPair == null || lastOpponentBidForPair >= minBid)) {
-				System.out.println("Trying to bid too low (" + toBid + "), changing it to: " + minBid);
+				log.floor(task.id, toBid, minBid);
 				toBid = minBid;
 			}
 			else {
@@ -314,13 +299,30 @@ public class AuctionTemplate implements AuctionBehavior {
 
 		// Update weight and distance
 		nbTasksHandled++;
+
+		optimizer.resume();
+
+		long bid = toBid < MIN_BID ? MIN_BID : toBid;
+		log.bid(task.id, bid);
+
+		long bidEnd = System.nanoTime();
+		metrics.recordPhase(SolverMetrics.STRATEGY, bidEnd - strategyStart);
+		metrics.recordPhase(SolverMetrics.BID, bidEnd - bidStart);
 		
-		return toBid < MIN_BID ? MIN_BID : toBid;
+		return bid;
 	}
 
 	@Override
 	public List<Plan> plan(List<Vehicle> vehicles, TaskSet tasks) {
 
+		// No more bids to compute
+		multiStart.shutdown();
+		optimizer.shutdown();
+		log.close();
+		metrics.unregister();
+		backgroundMetrics.unregister();
+		takeOptimizedSolution();
+
 		if (!tasks.isEmpty()) {
 			Solution sol = Solution.recreateSolutionWithGoodTasks(bestSolution, tasks);
 
@@ -330,7 +332,7 @@ public class AuctionTemplate implements AuctionBehavior {
 			System.out.println("Total benefice for agent " + agent.id() + " is : " + (ourTotalReward - sol.getTotalCost()));
 			System.out.println();
 
-			return createPlanFromSolution(sol);
+			return planBuilder.build(sol);
 		}
 		else {
 			// If nothing
@@ -344,35 +346,25 @@ public class AuctionTemplate implements AuctionBehavior {
 
 	}
 
+	// Auction events go to the console, or to the file given by the log-file
+	// property of the agent, at the level given by its log-level property
+	private static AuctionLog createLog(Agent agent) {
+		int level = AuctionLog.parseLevel(agent.readProperty("log-level", String.class, "info"));
+		String file = agent.readProperty("log-file", String.class, null);
+		AuctionLog.Sink sink = file == null ? AuctionLog.console() : AuctionLog.file(new File(file));
+		return new AuctionLog(level, sink, agent.name(), LOG_CAPACITY);
+	}
 
-	private List<Plan> createPlanFromSolution(Solution solution) {
-		List<Plan> toReturn = new ArrayList<Plan>();
-		for (int i = 0; i < solution.getVehiclesFirstTask().length; i++) {
-			AgentTask current = solution.getVehiclesFirstTask()[i];
-			Plan plan = new Plan(solution.getVehicles().get(i).getCurrentCity());
-			City currentCity = solution.getVehicles().get(i).getCurrentCity();
-			while (current != null) {
-				if (current.isPickup()) {
-					for (City c : currentCity
-							.pathTo(current.getTask().pickupCity)) {
-						plan.appendMove(c);
-					}
-					plan.appendPickup(current.getTask());
-					currentCity = current.getTask().pickupCity;
-				} else {
-					for (City c : currentCity
-							.pathTo(current.getTask().deliveryCity)) {
-						plan.appendMove(c);
-					}
-					plan.appendDelivery(current.getTask());
-					currentCity = current.getTask().deliveryCity;
-				}
-				current = current.getNext();
-			}
-			toReturn.add(plan);
+	// Use the solution of the background optimizer if it improved ours, the
+	// cost of our tasks being then lower
+	private void takeOptimizedSolution() {
+		Solution latest = optimizer.getLatest();
+		if (latest != null && bestSolution != null && latest != bestSolution
+				&& latest.getInstance() == bestSolution.getInstance()
+				&& latest.getTotalCost() < bestSolution.getTotalCost()) {
+			bestSolution = latest;
+			ourLastCost = latest.getTotalCost();
 		}
-
-		return toReturn;
 	}
 
 	private Plan naivePlan(Vehicle vehicle, TaskSet tasks) {
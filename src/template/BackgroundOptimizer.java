@@ -0,0 +1,118 @@
+package template;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps improving the solution committed by the agent while it waits for the
+ * next auction. The work is cut into short slices, each a search warm-started
+ * from the latest solution; an improvement is published only if no new
+ * solution was committed in the meantime, so readers always get a solution for
+ * the current set of tasks.
+ *
+ * The agent pauses the optimizer while it computes a bid, to leave it all the
+ * cores: pause returns once the slice in progress has stopped. It shuts the
+ * optimizer down when it has to plan.
+ */
+public class BackgroundOptimizer implements Runnable {
+
+	// Length of one optimization slice, in ms
+	private static final double SLICE = 200;
+
+	private final Centralized solver;
+	private final SplittableRandom random;
+	private final AtomicReference<Solution> latest = new AtomicReference<Solution>();
+	private final Thread thread;
+	// Held by the worker for the whole of a slice
+	private final Object sliceLock = new Object();
+
+	private volatile boolean running = true;
+	private volatile boolean paused = false;
+	private volatile SearchBudget currentBudget = null;
+
+	public BackgroundOptimizer(Centralized solver, SplittableRandom random) {
+		this.solver = solver;
+		this.random = random;
+		this.thread = new Thread(this, "background-optimizer");
+		this.thread.setDaemon(true);
+		this.thread.setPriority(Thread.MIN_PRIORITY);
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	// Best known solution for the committed tasks, null before the first commit
+	public Solution getLatest() {
+		return latest.get();
+	}
+
+	// Replace the solution to improve, the slice in progress is dropped
+	public synchronized void commit(Solution solution) {
+		latest.set(solution);
+		cancelSlice();
+		notifyAll();
+	}
+
+	// Stop the slice in progress and wait for it to return
+	public void pause() {
+		paused = true;
+		cancelSlice();
+		synchronized (sliceLock) {
+			// The worker now sees the flag before starting another slice
+		}
+	}
+
+	public synchronized void resume() {
+		paused = false;
+		notifyAll();
+	}
+
+	public void shutdown() {
+		running = false;
+		cancelSlice();
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	private void cancelSlice() {
+		SearchBudget budget = currentBudget;
+		if (budget != null) {
+			budget.cancel();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			synchronized (this) {
+				while (running && (paused || latest.get() == null)) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+
+			synchronized (sliceLock) {
+				Solution base = latest.get();
+				SearchBudget budget = new SearchBudget(Integer.MAX_VALUE, SearchBudget.deadlineIn(SLICE));
+				// Publish the budget before checking the flags, so that a pause or
+				// a commit either is seen here or cancels this slice
+				currentBudget = budget;
+				if (!running || paused || base != latest.get()) {
+					continue;
+				}
+
+				Solution improved = solver.computeCentralized(base.getInstance(), base, budget, random);
+				currentBudget = null;
+				if (improved != null && improved.getTotalCost() < base.getTotalCost()) {
+					latest.compareAndSet(base, improved);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package template;
+
+import java.util.Arrays;
+
+/**
+ * Streaming statistics of the bids of an opponent, each bid updating them in
+ * O(1) without keeping the whole history:
+ * - geometric mean of the last bids (a window), kept as a sum of logarithms so
+ * that large bids cannot overflow it;
+ * - exponentially weighted moving average;
+ * - mean and variance of all the bids (Welford);
+ * - quantiles of all the bids, estimated with the P2 algorithm (five markers
+ * per quantile, see Jain and Chlamtac) on their logarithms, which keeps the
+ * interpolation of the markers sane when a few bids are huge.
+ */
+public class BidStatistics {
+
+	public static final double DEFAULT_ALPHA = 0.2;
+	public static final double[] DEFAULT_QUANTILES = { 0.1, 0.5, 0.9 };
+
+	// Window of the logarithms of the last bids
+	private final double[] logs;
+	private int windowSize = 0;
+	private int next = 0;
+	private double logSum = 0;
+
+	private final double alpha;
+	private double ewma = 0;
+
+	private long count = 0;
+	private double mean = 0;
+	private double m2 = 0;
+
+	private final double[] probabilities;
+	private final Quantile[] quantiles;
+
+	public BidStatistics(int window) {
+		this(window, DEFAULT_ALPHA, DEFAULT_QUANTILES);
+	}
+
+	public BidStatistics(int window, double alpha, double[] probabilities) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("The window must hold at least one bid");
+		}
+		this.logs = new double[window];
+		this.alpha = alpha;
+		this.probabilities = probabilities.clone();
+		this.quantiles = new Quantile[probabilities.length];
+		for (int i = 0; i < probabilities.length; i++) {
+			this.quantiles[i] = new Quantile(probabilities[i]);
+		}
+	}
+
+	public void add(long bid) {
+		// A bid of 0 would make the geometric mean 0 forever, count it as 1
+		double log = Math.log(Math.max(1, bid));
+		if (windowSize == logs.length) {
+			logSum -= logs[next];
+		}
+		else {
+			windowSize++;
+		}
+		logs[next] = log;
+		logSum += log;
+		next++;
+		if (next == logs.length) {
+			next = 0;
+			// Drop the rounding errors accumulated by the subtractions
+			logSum = 0;
+			for (int i = 0; i < windowSize; i++) {
+				logSum += logs[i];
+			}
+		}
+
+		ewma = count == 0 ? bid : alpha * bid + (1 - alpha) * ewma;
+
+		count++;
+		double delta = bid - mean;
+		mean += delta / count;
+		m2 += delta * (bid - mean);
+
+		for (Quantile q : quantiles) {
+			q.add(log);
+		}
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	// Geometric mean of the bids of the window, 0 if there are none
+	public double getGeometricMean() {
+		return windowSize == 0 ? 0 : Math.exp(logSum / windowSize);
+	}
+
+	public double getEwma() {
+		return ewma;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getVariance() {
+		return count < 2 ? 0 : m2 / (count - 1);
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	// Estimate of a quantile given to the constructor, 0 if there are no bids
+	public double getQuantile(double probability) {
+		for (int i = 0; i < probabilities.length; i++) {
+			if (probabilities[i] == probability) {
+				return count == 0 ? 0 : Math.exp(quantiles[i].get());
+			}
+		}
+		throw new IllegalArgumentException("Quantile " + probability + " is not estimated");
+	}
+
+	// P2 estimator of one quantile
+	private static class Quantile {
+		private final double p;
+		private final double[] heights = new double[5];
+		private final double[] positions = { 0, 1, 2, 3, 4 };
+		private final double[] desired;
+		private final double[] increments;
+		private int count = 0;
+
+		Quantile(double p) {
+			this.p = p;
+			this.desired = new double[] { 0, 2 * p, 4 * p, 2 + 2 * p, 4 };
+			this.increments = new double[] { 0, p / 2, p, (1 + p) / 2, 1 };
+		}
+
+		void add(double x) {
+			if (count < 5) {
+				heights[count++] = x;
+				if (count == 5) {
+					Arrays.sort(heights);
+				}
+				return;
+			}
+			count++;
+
+			// Cell of x, moving the extreme markers if needed
+			int k;
+			if (x < heights[0]) {
+				heights[0] = x;
+				k = 0;
+			}
+			else if (x >= heights[4]) {
+				heights[4] = x;
+				k = 3;
+			}
+			else {
+				k = 0;
+				while (x >= heights[k + 1]) {
+					k++;
+				}
+			}
+			for (int i = k + 1; i < 5; i++) {
+				positions[i]++;
+			}
+			for (int i = 0; i < 5; i++) {
+				desired[i] += increments[i];
+			}
+
+			// Move the middle markers towards their desired positions
+			for (int i = 1; i < 4; i++) {
+				double d = desired[i] - positions[i];
+				if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+					int s = d > 0 ? 1 : -1;
+					double h = parabolic(i, s);
+					if (heights[i - 1] < h && h < heights[i + 1]) {
+						heights[i] = h;
+					}
+					else {
+						heights[i] += s * (heights[i + s] - heights[i]) / (positions[i + s] - positions[i]);
+					}
+					positions[i] += s;
+				}
+			}
+		}
+
+		private double parabolic(int i, int s) {
+			return heights[i] + s / (positions[i + 1] - positions[i - 1])
+					* ((positions[i] - positions[i - 1] + s) * (heights[i + 1] - heights[i]) / (positions[i + 1] - positions[i])
+					+ (positions[i + 1] - positions[i] - s) * (heights[i] - heights[i - 1]) / (positions[i] - positions[i - 1]));
+		}
+
+		double get() {
+			if (count < 5) {
+				// Exact quantile of the few values seen
+				double[] sorted = Arrays.copyOf(heights, count);
+				Arrays.sort(sorted);
+				return sorted[(int) Math.min(count - 1, Math.floor(p * count))];
+			}
+			return heights[2];
+		}
+	}
+
+}
@@ -2,277 +2,517 @@ package template;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import logist.simulation.Vehicle;
 import logist.task.Task;
 import logist.task.TaskSet;
 
+/**
+ * Stochastic local search over the solutions of an instance. The solver keeps
+ * no state between two calls, so one instance can run several searches at the
+ * same time. Every random choice of a search comes from the generator it is
+ * given: split one per search from the seeded generator of the agent to get
+ * runs that are independent and can be replayed.
+ *
+ * Each iteration draws an operator (see OperatorSelector): either a pool of
+ * small moves of one kind, of which the best is proposed, or a single ruin and
+ * recreate. By default the draws follow fixed weights; with the system
+ * property ADAPTIVE_PROPERTY set to true they adapt during the run to what
+ * each operator brings for its CPU time (ALNS), which did not pay off on the
+ * instances of a game.
+ *
+ * The proposed move is accepted by simulated annealing. The temperature is
+ * calibrated on the moves sampled around the first solution, so that it
+ * follows the size of the cost differences of the instance, and cools down
+ * geometrically with the budget spent. When no new best solution comes for a
+ * while the schedule is moved back (reheating). After the stagnation window of
+ * the budget the search starts again from its best solution at the initial
+ * temperature, and only if a second window brings nothing it stops early.
+ *
+ * Unless its tenure is 0, a tabu memory keeps the fingerprints of the last
+ * solutions of the search, and the moves leading back to one of them are left
+ * out of the pools: the search does not undo its last moves.
+ *
+ * Each run adds its counts (iterations, moves sampled, infeasible and
+ * accepted, and the statistics of the operators) to the SolverMetrics of the
+ * solver when it ends.
+ */
 public class Centralized {
-	
-	private int roundRobin = 0;
 
-	private int poolSize;
-	private int maxIter;
-	private Solution initSolution = null;
+	// How many tasks a ruin and recreate removes at most
+	private static final double RUIN_FRACTION = 0.3;
+	private static final int MAX_RUIN_SIZE = 20;
+	private static final int MIN_TASKS_FOR_RUIN = 4;
+
+	// Samples drawn by a call to a sampler before it gives up, per stop of the
+	// instance, and what it then returns
+	private static final int SAMPLING_ATTEMPTS = 4;
+	static final int NO_MOVE = -1;
+
+	// Longest segment reversed by a 2-opt move
+	private static final int MAX_REVERSAL = 8;
+
+	// Annealing: probability to accept a move as bad as the mean worsening
+	// sampled at start-up, at the start and at the end of the budget
+	private static final int CALIBRATION_SAMPLES = 100;
+	private static final double INITIAL_ACCEPTANCE = 0.05;
+	private static final double FINAL_ACCEPTANCE = 0.00001;
+	// Iterations without a new best before reheating, and the fraction of the
+	// cooling done so far that a reheat undoes
+	private static final int REHEAT_PERIOD = 5000;
+	private static final double REHEAT = 0.5;
+
+	// Number of recent solutions the search does not go back to
+	public static final int DEFAULT_TABU_TENURE = 32;
+
+	// Operators: the small moves, sampled by pools, then every ruin with every
+	// recreate of RuinRecreateMove
+	public static final int SWAP = 0;
+	public static final int TRANSFER = 1;
+	public static final int OR_OPT = 2;
+	public static final int TWO_OPT = 3;
+	public static final int FIRST_RUIN = 4;
+	public static final String[] OPERATORS = { "swap", "transfer", "or-opt", "2-opt",
+			"ruin-random-greedy", "ruin-random-regret", "ruin-worst-greedy", "ruin-worst-regret",
+			"ruin-related-greedy", "ruin-related-regret" };
+	// Weights of the draws when they do not adapt: 0.8 for the small moves and
+	// 0.2 for the ruins, split evenly
+	private static final double[] OPERATOR_WEIGHTS = { 0.2, 0.2, 0.2, 0.2,
+			0.2 / 6, 0.2 / 6, 0.2 / 6, 0.2 / 6, 0.2 / 6, 0.2 / 6 };
+
+	public static final String ADAPTIVE_PROPERTY = "template.adaptiveOperators";
+	private static final boolean ADAPTIVE_OPERATORS = Boolean.getBoolean(ADAPTIVE_PROPERTY);
+
+	private final int poolSize;
+	private final int maxIter;
+	private final CostModel costModel;
+	private final SolverMetrics metrics;
+	private final int tabuTenure;
+
+	public Centralized(int poolSize, int maxIter, CostModel costModel) {
+		this(poolSize, maxIter, costModel, new SolverMetrics());
+	}
 
-	public Centralized(int poolSize, int maxIter) {
-		this.poolSize = poolSize;
-		this.maxIter = maxIter;
+	public Centralized(int poolSize, int maxIter, CostModel costModel, SolverMetrics metrics) {
+		this(poolSize, maxIter, costModel, metrics, DEFAULT_TABU_TENURE);
 	}
 
-	public Centralized(int poolSize, int maxIter, Solution initSolution) {
+	// A tenure of 0 disables the tabu memory
+	public Centralized(int poolSize, int maxIter, CostModel costModel, SolverMetrics metrics, int tabuTenure) {
 		this.poolSize = poolSize;
 		this.maxIter = maxIter;
-		this.initSolution = initSolution;
-	}
-	
-	public void setMaxIter(int i) {
-		this.maxIter = i;
+		this.costModel = costModel;
+		this.metrics = metrics;
+		this.tabuTenure = tabuTenure;
 	}
 
-	public void setInitSolution(Solution is) {
-		if(is != null && is.checkCorrectSolution()) {
-			initSolution = is.clone();
-		} else {
-			initSolution = null;
-		}
+	public SolverMetrics getMetrics() {
+		return metrics;
 	}
 
-	public Solution computeCentralized(List<Vehicle> vehicles, TaskSet tasks) {
+	public Solution computeCentralized(List<Vehicle> vehicles, TaskSet tasks, SplittableRandom random) {
 
 		HashSet<Task> tmp = new HashSet<Task>();
 		for(Task t : tasks) {
 			tmp.add(t);
 		}
-		return computeCentralized(vehicles, tmp);
+		return computeCentralized(vehicles, tmp, random);
 	}
 
-	public Solution computeCentralized(List<Vehicle> vehicles, HashSet<Task> tasks) {
+	public Solution computeCentralized(List<Vehicle> vehicles, HashSet<Task> tasks, SplittableRandom random) {
+		return computeCentralized(new Instance(costModel, vehicles, tasks), null, new SearchBudget(maxIter), random);
+	}
+
+	// Search from the given solution (left untouched), or from a new one if it
+	// is null or not valid, until the budget is spent or cancelled
+	public Solution computeCentralized(Instance instance, Solution initSolution, SearchBudget budget,
+			SplittableRandom random) {
+		long start = System.nanoTime();
 		// Create first solution
 
-		Solution currentSolution = initSolution == null ? createInitSolution(vehicles, tasks) : initSolution;
-		Solution bestSolution = currentSolution;
+		if (initSolution != null && !initSolution.checkCorrectSolution()) {
+			initSolution = null;
+		}
+		Solution currentSolution = initSolution == null ? createInitSolution(instance, random) : initSolution.clone();
+		if (currentSolution == null) {
+			return null;
+		}
+		// Copy of the best solution, only taken when we leave it for a worse one
+		Solution bestSolution = null;
+		double bestCost = currentSolution.getTotalCost();
+		boolean currentIsBest = true;
+
+		// Moves are evaluated without building the neighbors: for each kind we
+		// keep the best one of the pool and a spare to evaluate the next one
+		Move[] candidates = new Move[] { new SwapMove(), new TransferMove(), new OrOptMove(), new TwoOptMove() };
+		Move[] bests = new Move[] { new SwapMove(), new TransferMove(), new OrOptMove(), new TwoOptMove() };
+		RuinRecreateMove ruin = new RuinRecreateMove();
+		int maxRuinSize = Math.min(MAX_RUIN_SIZE, Math.max(2, (int) (RUIN_FRACTION * instance.getTaskNumber())));
+		OperatorSelector selector = ADAPTIVE_OPERATORS ? new OperatorSelector(OPERATORS.length)
+				: new OperatorSelector(OPERATOR_WEIGHTS, false);
+		boolean[] available = new boolean[OPERATORS.length];
+		TabuMemory tabu = tabuTenure > 0 ? new TabuMemory(tabuTenure) : null;
+		if (tabu != null) {
+			tabu.add(currentSolution.getFingerprint());
+		}
 
 		int iteration = 0;
-		int maxIteration = maxIter;
-
-		//Solution[] pool = new Solution[poolSize];
-		do {
+		long nbMoves = 0;
+		long nbInfeasible = 0;
+		long nbAccepted = 0;
+		long nbTabu = 0;
+
+		// Temperatures from the mean worsening of the moves around the first
+		// solution, none (descent only) if no move can worsen it
+		double meanWorsening = 0;
+		int nbWorsening = 0;
+		int calibrationInfeasible = 0;
+		availableOperators(currentSolution, available);
+		for (int i = 0; i < CALIBRATION_SAMPLES; i++) {
+			int kind = i % FIRST_RUIN;
+			if (!available[kind]) {
+				continue;
+			}
+			int sampled = sample(currentSolution, kind, candidates[kind], random);
+			if (sampled == NO_MOVE) {
+				calibrationInfeasible++;
+				continue;
+			}
+			calibrationInfeasible += sampled;
+			nbMoves++;
+			if (candidates[kind].getDelta() > 0) {
+				meanWorsening += candidates[kind].getDelta();
+				nbWorsening++;
+			}
+		}
+		nbInfeasible += calibrationInfeasible;
+		meanWorsening = nbWorsening == 0 ? 0 : meanWorsening / nbWorsening;
+		double initialTemperature = -meanWorsening / Math.log(INITIAL_ACCEPTANCE);
+		double cooling = Math.log(INITIAL_ACCEPTANCE) / Math.log(FINAL_ACCEPTANCE);
+
+		// The temperature follows the fraction of the budget spent, minus what
+		// the reheats took back
+		double timeRatio = 0;
+		double reheated = 0;
+		int nbReheats = 0;
+		int lastBest = 0;
+		int lastReheat = 0;
+		int lastRestart = 0;
+		boolean restarted = false;
+		boolean stagnated = false;
+
+		while (timeRatio < 1 && !budget.isCancelled()) {
+			if (budget.isStagnating(iteration - Math.max(lastBest, lastRestart))) {
+				if (restarted) {
+					stagnated = true;
+					break;
+				}
+				// Back to the best solution, as hot as at the start
+				if (!currentIsBest) {
+					currentSolution.copyFrom(bestSolution);
+					currentIsBest = true;
+				}
+				reheated = timeRatio;
+				lastRestart = iteration;
+				restarted = true;
+				nbReheats++;
+			}
+			if (iteration - Math.max(lastBest, lastReheat) >= REHEAT_PERIOD) {
+				reheated += REHEAT * (timeRatio - reheated);
+				lastReheat = iteration;
+				nbReheats++;
+			}
 			iteration++;
+			timeRatio = budget.progress(iteration);
+			double temperature = initialTemperature * Math.pow(cooling, timeRatio - reheated);
+
+			int operator = selector.select(availableOperators(currentSolution, available), random);
+			if (operator < 0) {
+				// Nothing can change
+				break;
+			}
+			long operatorStart = System.nanoTime();
+			int operatorInfeasible = 0;
 
-			Solution bestRandomN = null;
+			Move bestRandomN = null;
 			int iter = 0;
-			while(iter < poolSize || bestRandomN == null) {
-				Solution randomN;
-				if (currentSolution.canChangeTaskOrder() &&  Math.random() < 0.5) {
-					// Change task order
-					randomN = changingTaskOrder(currentSolution);
-				} else {
-					// Change vehicle
-					randomN = changingVehicle(currentSolution);
+			if (operator >= FIRST_RUIN) {
+				// A single large move instead of the pool
+				int ruinIdx = operator - FIRST_RUIN;
+				ruin.set(ruinIdx / RuinRecreateMove.NB_RECREATES, ruinIdx % RuinRecreateMove.NB_RECREATES,
+						2 + random.nextInt(maxRuinSize - 1), random);
+				if (!ruin.evaluate(currentSolution)) {
+					operatorInfeasible++;
 				}
-
-				if(bestRandomN == null || bestRandomN.getTotalCost() > randomN.getTotalCost()) {
-					bestRandomN = randomN;
+				else if (tabu != null && tabu.contains(ruin.getFingerprint())) {
+					nbTabu++;
+				}
+				else {
+					bestRandomN = ruin;
 				}
 				iter++;
 			}
+			while(operator < FIRST_RUIN && iter < poolSize) {
+				int kind = operator;
+				int sampled = sample(currentSolution, kind, candidates[kind], random);
+				iter++;
+				if (sampled == NO_MOVE) {
+					// Gave up, counted as one infeasible sample
+					operatorInfeasible++;
+					continue;
+				}
+				operatorInfeasible += sampled;
+				if (tabu != null && tabu.contains(candidates[kind].getFingerprint())) {
+					nbTabu++;
+					continue;
+				}
 
-			if (P(currentSolution, bestRandomN, ((double) iteration) / maxIteration) >= Math
-					.random()) {
-				currentSolution = bestRandomN;
-				if (currentSolution.getTotalCost() < bestSolution
-						.getTotalCost()) {
-					bestSolution = currentSolution;
+				if(bestRandomN == null || bestRandomN.getDelta() > candidates[kind].getDelta()) {
+					Move tmp = bests[kind];
+					bests[kind] = candidates[kind];
+					candidates[kind] = tmp;
+					bestRandomN = bests[kind];
 				}
 			}
+			nbMoves += iter;
+			nbInfeasible += operatorInfeasible;
+
+			int outcome = OperatorSelector.NOTHING;
+			double improvement = 0;
+			if (bestRandomN != null && P(bestRandomN.getDelta(), temperature) >= random.nextDouble()) {
+				if (currentIsBest && bestRandomN.getDelta() > 0) {
+					if (bestSolution == null) {
+						bestSolution = currentSolution.clone();
+					} else {
+						bestSolution.copyFrom(currentSolution);
+					}
+					currentIsBest = false;
+				}
+				improvement = -bestRandomN.getDelta();
+				bestRandomN.apply(currentSolution);
+				nbAccepted++;
+				outcome = improvement > 0 ? OperatorSelector.IMPROVED : OperatorSelector.ACCEPTED;
+				assert currentSolution.checkCorrectSolution();
+				assert currentSolution.getFingerprint() == bestRandomN.getFingerprint();
+				if (tabu != null) {
+					tabu.add(currentSolution.getFingerprint());
+				}
+				if (currentSolution.getTotalCost() < bestCost) {
+					bestCost = currentSolution.getTotalCost();
+					currentIsBest = true;
+					lastBest = iteration;
+					restarted = false;
+					outcome = OperatorSelector.NEW_BEST;
+				}
+			}
+			selector.record(operator, System.nanoTime() - operatorStart, operatorInfeasible, outcome, improvement);
 
-		} while (iteration < maxIteration);
+		}
 
 		/*
-		System.out.println("Best solution cost: " + bestSolution.getTotalCost()
+		System.out.println("Best solution cost: " + bestCost
 				+ ", with iteration " + iteration);
 		System.out.println();
-		printSolution(bestSolution, true);
+		printSolution(currentIsBest ? currentSolution : bestSolution, true);
 		System.out.println();
 		 */
 
-		return bestSolution;
+		metrics.recordRun(iteration, nbMoves + nbInfeasible, nbInfeasible, nbAccepted, System.nanoTime() - start);
+		metrics.recordOperators(selector);
+		metrics.recordSchedule(nbReheats, stagnated);
+		metrics.recordTabu(nbTabu);
+		return currentIsBest ? currentSolution : bestSolution;
+	}
+
+	// Operators that can change the solution
+	private static boolean[] availableOperators(Solution solution, boolean[] available) {
+		Instance instance = solution.getInstance();
+		boolean canChangeOrder = solution.canChangeTaskOrder();
+		available[SWAP] = canChangeOrder;
+		available[OR_OPT] = canChangeOrder;
+		available[TWO_OPT] = canChangeOrder;
+		available[TRANSFER] = instance.getVehicleNumber() > 1 && instance.getTaskNumber() > 0;
+		for (int i = FIRST_RUIN; i < available.length; i++) {
+			available[i] = instance.getTaskNumber() >= MIN_TASKS_FOR_RUIN;
+		}
+		return available;
 	}
 
 	// Acceptance probability function
 	// (https://en.wikipedia.org/wiki/Simulated_annealing)
-	private double P(Solution currentSolution, Solution newSolution,
-			double timeRatio) {
+	private double P(double delta, double temperature) {
 
-		if (currentSolution.getTotalCost() >= newSolution.getTotalCost()) {
+		if (delta <= 0) {
 			return 1;
 		}
+		if (temperature <= 0) {
+			return 0;
+		}
 
-		return (Math.exp(-(newSolution.getTotalCost() - currentSolution
-				.getTotalCost()) / timeRatio));
+		return (Math.exp(-delta / temperature));
+
+	}
 
+	// Sample a feasible move of the given kind (one of the small moves), return
+	// the number of infeasible ones, NO_MOVE if none was found
+	private int sample(Solution solution, int kind, Move move, SplittableRandom random) {
+		if (kind == SWAP) {
+			return changingTaskOrder(solution, (SwapMove) move, random);
+		} else if (kind == OR_OPT) {
+			return relocatingSegment(solution, (OrOptMove) move, random);
+		} else if (kind == TWO_OPT) {
+			return reversingSegment(solution, (TwoOptMove) move, random);
+		} else {
+			return changingVehicle(solution, (TransferMove) move, random);
+		}
 	}
 
-	private Solution changingTaskOrder(Solution oldSolution) {
+	// Sample swaps until one is feasible, return the number of infeasible ones
+	// (NO_MOVE if the attempts ran out)
+	int changingTaskOrder(Solution oldSolution, SwapMove move, SplittableRandom random) {
 
-		Solution toReturn = null;
+		int infeasible = -1;
+		boolean found = false;
+		int maxAttempts = maxAttempts(oldSolution);
 
-		while (toReturn == null) {
-			int vehicleIdx = (int) (Math.random() * oldSolution.getVehicles()
-					.size());
-			int firstTaskIdx = (int) (Math.random() * oldSolution
-					.getTaskNumber(vehicleIdx));
-			int secondTaskIdx = (int) (Math.random() * oldSolution
-					.getTaskNumber(vehicleIdx));
-			if (firstTaskIdx == secondTaskIdx
-					|| oldSolution.getTaskNumber(vehicleIdx) <= 3) {
+		for (int attempt = 0; !found && attempt < maxAttempts; attempt++) {
+			int vehicleIdx = random.nextInt(oldSolution.getInstance().getVehicleNumber());
+			if (oldSolution.getTaskNumber(vehicleIdx) <= 3) {
 				continue;
 			}
-
-			Solution sol = oldSolution.clone();
-			AgentTask firstTask = sol.getAgentTaskAt(vehicleIdx, firstTaskIdx);
-			AgentTask secondTask = sol
-					.getAgentTaskAt(vehicleIdx, secondTaskIdx);
-			if (firstTask == null || secondTask == null) {
-				throw new IllegalStateException(
-						"New solution does not correspond to the old one.");
+			int firstTaskIdx = random.nextInt(oldSolution.getTaskNumber(vehicleIdx));
+			int secondTaskIdx = random.nextInt(oldSolution.getTaskNumber(vehicleIdx));
+			if (firstTaskIdx == secondTaskIdx) {
+				continue;
 			}
 
-			// Exchange
-			AgentTask beforeNewOther = secondTask;
-			if (!secondTask.equals(firstTask.getNext())) {
-				// Get the element before the one we removed
-				beforeNewOther = sol.removeTaskForVehicle(vehicleIdx,
-						secondTask).get(0);
-				sol.addTaskForVehicle(vehicleIdx, secondTask, firstTask);
-			}
-			sol.removeTaskForVehicle(vehicleIdx, firstTask);
-			sol.addTaskForVehicle(vehicleIdx, firstTask, beforeNewOther);
+			move.set(vehicleIdx, firstTaskIdx, secondTaskIdx);
+			found = move.evaluate(oldSolution);
+			infeasible++;
+		}
+		return found ? infeasible : NO_MOVE;
+	}
 
-			// Set first of vehicle if needed
-			if (sol.checkCorrectSolution()) {
-				toReturn = sol;
+	// Sample segments moved elsewhere in their route (targets that keep the
+	// precedences only) until one is feasible, return the number of
+	// infeasible ones (NO_MOVE if the attempts ran out)
+	int relocatingSegment(Solution oldSolution, OrOptMove move, SplittableRandom random) {
+
+		int infeasible = -1;
+		boolean found = false;
+		int maxAttempts = maxAttempts(oldSolution);
+		for (int attempt = 0; !found && attempt < maxAttempts; attempt++) {
+			int vehicleIdx = random.nextInt(oldSolution.getInstance().getVehicleNumber());
+			int length = oldSolution.getTaskNumber(vehicleIdx);
+			if (length <= 3) {
+				continue;
+			}
+			int segmentLength = 1 + random.nextInt(Math.min(OrOptMove.MAX_SEGMENT, length - 1));
+			int from = random.nextInt(length - segmentLength + 1);
+			int targets = move.setSegment(oldSolution, vehicleIdx, from, segmentLength);
+			if (targets == 0) {
+				continue;
 			}
 
+			move.setTarget(random.nextInt(targets));
+			found = move.evaluate(oldSolution);
+			infeasible++;
 		}
-
-		return toReturn;
+		return found ? infeasible : NO_MOVE;
 	}
 
-	private Solution changingVehicle(Solution oldSolution) {
-
-		Solution toReturn = null;
-		while (toReturn == null) {
-			int firstVIdx = (int) (Math.random() * oldSolution.getVehicles()
-					.size());
-			int secondVIdx = (int) (Math.random() * oldSolution.getVehicles()
-					.size());
-			int taskIdx = (int) (Math.random() * oldSolution
-					.getTaskNumber(firstVIdx));
-			if (firstVIdx == secondVIdx
-					|| oldSolution.getTaskNumber(firstVIdx) < 2) {
+	// Sample segments to reverse (holding no whole task) until one is
+	// feasible, return the number of infeasible ones (NO_MOVE if the attempts
+	// ran out)
+	int reversingSegment(Solution oldSolution, TwoOptMove move, SplittableRandom random) {
+
+		int infeasible = -1;
+		boolean found = false;
+		int maxAttempts = maxAttempts(oldSolution);
+		for (int attempt = 0; !found && attempt < maxAttempts; attempt++) {
+			int vehicleIdx = random.nextInt(oldSolution.getInstance().getVehicleNumber());
+			int length = oldSolution.getTaskNumber(vehicleIdx);
+			if (length <= 3) {
+				continue;
+			}
+			int from = random.nextInt(length - 1);
+			int maxEnd = TwoOptMove.getMaxEnd(oldSolution, vehicleIdx, from, MAX_REVERSAL);
+			if (maxEnd == from) {
 				continue;
 			}
 
-			Solution sol = oldSolution.clone();
-			AgentTask taskToMove = sol.getAgentTaskAt(firstVIdx, taskIdx);
+			move.set(vehicleIdx, from, from + 1 + random.nextInt(maxEnd - from));
+			found = move.evaluate(oldSolution);
+			infeasible++;
+		}
+		return found ? infeasible : NO_MOVE;
+	}
 
-			sol.removeTaskForVehicle(firstVIdx, taskToMove);
-			AgentTask correspondingTask = sol.removeTaskForVehicle(firstVIdx,
-					taskToMove.getTask(), !taskToMove.isPickup()).get(1);
+	// Sample transfers until one is feasible, return the number of infeasible
+	// ones (NO_MOVE if the attempts ran out)
+	int changingVehicle(Solution oldSolution, TransferMove move, SplittableRandom random) {
 
-			if (taskToMove.isPickup()) {
-				sol.addTaskForVehicle(secondVIdx, correspondingTask, null);
-				sol.addTaskForVehicle(secondVIdx, taskToMove, null);
-			} else {
-				sol.addTaskForVehicle(secondVIdx, taskToMove, null);
-				sol.addTaskForVehicle(secondVIdx, correspondingTask, null);
+		int infeasible = -1;
+		boolean found = false;
+		int maxAttempts = maxAttempts(oldSolution);
+		for (int attempt = 0; !found && attempt < maxAttempts; attempt++) {
+			int firstVIdx = random.nextInt(oldSolution.getInstance().getVehicleNumber());
+			int secondVIdx = random.nextInt(oldSolution.getInstance().getVehicleNumber());
+			if (firstVIdx == secondVIdx
+					|| oldSolution.getTaskNumber(firstVIdx) < 2) {
+				continue;
 			}
+			int taskIdx = random.nextInt(oldSolution.getTaskNumber(firstVIdx));
 
-			if (sol.checkCorrectSolution()) {
-				toReturn = sol;
-			}
+			move.set(firstVIdx, secondVIdx, Solution.slotOf(oldSolution.getStopAt(firstVIdx, taskIdx)));
+			found = move.evaluate(oldSolution);
+			infeasible++;
 		}
-
-		return toReturn;
+		return found ? infeasible : NO_MOVE;
 	}
 
-	private Solution createInitSolution(List<Vehicle> vehicles, HashSet<Task> tasks) {
-		int vehiclesIdx = roundRobin;
-		roundRobin = (roundRobin + 1) % vehicles.size();
-		AgentTask[] lastTasks = new AgentTask[vehicles.size()];
-		int[] taskCounter = new int[vehicles.size()];
-		AgentTask[] vehiclesFirstTask = new AgentTask[vehicles.size()];
-		double totalCost = 0.0;
-
-		for (Task task : tasks) {
+	// A small multiple of the number of stops, the length of the longest
+	// possible route
+	private static int maxAttempts(Solution solution) {
+		return SAMPLING_ATTEMPTS * 2 * solution.getInstance().getTaskNumber();
+	}
 
-			Vehicle currentVehicle = vehicles.get(vehiclesIdx);
+	private Solution createInitSolution(Instance instance, SplittableRandom random) {
+		int vehiclesIdx = random.nextInt(instance.getVehicleNumber());
+		Solution solution = new Solution(instance);
 
-			AgentTask aTask1 = new AgentTask(task, true);
-			AgentTask aTask2 = new AgentTask(task, false);
-			aTask1.setNext(aTask2);
-			taskCounter[vehiclesIdx] += 2;
+		for (int slot = 0; slot < instance.getTaskNumber(); slot++) {
 
-			if (currentVehicle.capacity() < task.weight) {
+			if (instance.getCapacity(vehiclesIdx) < instance.getWeight(slot)) {
 				System.out
 						.println("Unsolvable situation: one task is too heavy for one vehicle.");
 				return null;
 			}
 
-			if (lastTasks[vehiclesIdx] == null) {
-				// New vehicle
-				// Should we add the cost from current city to first city?
-				vehiclesFirstTask[vehiclesIdx] = aTask1;
-				totalCost += currentVehicle.getCurrentCity().distanceTo(
-						task.pickupCity)
-						* currentVehicle.costPerKm();
-			} else {
-				lastTasks[vehiclesIdx].setNext(aTask1);
-				totalCost += (lastTasks[vehiclesIdx].getTask().deliveryCity
-						.distanceTo(task.pickupCity))
-						* currentVehicle.costPerKm();
-			}
-
-			totalCost += (task.pickupCity.distanceTo(task.deliveryCity))
-					* currentVehicle.costPerKm();
-			lastTasks[vehiclesIdx] = aTask2;
+			solution.addTaskForVehicle(vehiclesIdx, Solution.pickupOf(slot),
+					solution.getTaskNumber(vehiclesIdx));
+			solution.addTaskForVehicle(vehiclesIdx, Solution.deliveryOf(slot),
+					solution.getTaskNumber(vehiclesIdx));
 		}
 
-//		System.out.println("Cost of init solution: " + totalCost);
+//		System.out.println("Cost of init solution: " + solution.getTotalCost());
 
-		return new Solution(totalCost, vehiclesFirstTask, vehicles, taskCounter);
+		return solution;
 	}
 
 	// Helper function
 	private void printSolution(Solution sol, boolean id) {
 		System.out.println("Solution:");
 		for (int i = 0; i < sol.getVehicles().size(); i++) {
-			AgentTask current = sol.getVehiclesFirstTask()[i];
 			System.out.println("Vehicle " + i + ":");
-			while (current != null) {
-				System.out.print(current.isPickup() ? "pickup" : "deliver");
+			for (int pos = 0; pos < sol.getTaskNumber(i); pos++) {
+				int current = sol.getStopAt(i, pos);
+				Task task = sol.getTask(current);
+				System.out.print(Solution.isPickup(current) ? "pickup" : "deliver");
 				System.out.print(":");
-				if (id) {
-					if (current.isPickup()) {
-						System.out.print(current.getTask().pickupCity + "("
-								+ current.getTask().id + ") ; ");
-					} else {
-						System.out.print(current.getTask().deliveryCity + "("
-								+ current.getTask().id + ") ; ");
-					}
-
-				} else {
-					if (current.isPickup()) {
-						System.out.print(current.getTask().pickupCity + "("
-								+ current.getTask().weight + ") ; ");
-					} else {
-						System.out.print(current.getTask().deliveryCity + "("
-								+ current.getTask().weight + ") ; ");
-					}
-				}
-				current = current.getNext();
+				System.out.print((Solution.isPickup(current) ? task.pickupCity : task.deliveryCity)
+						+ "(" + (id ? task.id : task.weight) + ") ; ");
 			}
 			System.out.println();
 		}
@@ -0,0 +1,95 @@
+package template;
+
+import java.util.List;
+
+import logist.simulation.Vehicle;
+import logist.topology.Topology;
+import logist.topology.Topology.City;
+
+/**
+ * Distances of the topology as a flat matrix indexed by city id
+ * ([from * nbCities + to]), built once in setup. For each cost per km of the
+ * vehicles of the agent we also keep the matrix already multiplied by it, so
+ * that the cost of a trip is a single array read.
+ */
+public class CostModel {
+
+	private final int nbCities;
+	private final double[] distances;
+
+	private final int[] costPerKms;
+	private final double[][] costs;
+
+	public CostModel(Topology topology, List<Vehicle> vehicles) {
+		this(nbCitiesOf(topology), distancesOf(topology), costPerKmsOf(vehicles));
+	}
+
+	// Cost model over a plain distance matrix, without the cities of a topology
+	// (see SolverBenchmark)
+	CostModel(int nbCities, double[] distances, int[] costPerKms) {
+		if (distances.length != nbCities * nbCities) {
+			throw new IllegalArgumentException("The distance matrix does not match the number of cities.");
+		}
+		this.nbCities = nbCities;
+		this.distances = distances;
+
+		this.costPerKms = costPerKms.clone();
+		this.costs = new double[costPerKms.length][];
+		for (int i = 0; i < costPerKms.length; i++) {
+			this.costs[i] = getCosts(this.costPerKms[i]);
+		}
+	}
+
+	// Cities are numbered from 0, the highest id gives their number
+	private static int nbCitiesOf(Topology topology) {
+		int maxId = -1;
+		for (City c : topology.cities()) {
+			maxId = Math.max(maxId, c.id);
+		}
+		return maxId + 1;
+	}
+
+	private static double[] distancesOf(Topology topology) {
+		int nbCities = nbCitiesOf(topology);
+		double[] distances = new double[nbCities * nbCities];
+		for (City from : topology.cities()) {
+			for (City to : topology.cities()) {
+				distances[from.id * nbCities + to.id] = from.distanceTo(to);
+			}
+		}
+		return distances;
+	}
+
+	private static int[] costPerKmsOf(List<Vehicle> vehicles) {
+		int[] costPerKms = new int[vehicles.size()];
+		for (int i = 0; i < vehicles.size(); i++) {
+			costPerKms[i] = vehicles.get(i).costPerKm();
+		}
+		return costPerKms;
+	}
+
+	public int getCityNumber() {
+		return nbCities;
+	}
+
+	public double getDistance(int fromCity, int toCity) {
+		return distances[fromCity * nbCities + toCity];
+	}
+
+	// Matrix of the costs for a vehicle with this cost per km, shared when it
+	// is the one of a vehicle of the agent
+	public double[] getCosts(int costPerKm) {
+		for (int i = 0; i < costPerKms.length; i++) {
+			if (costs[i] != null && costPerKms[i] == costPerKm) {
+				return costs[i];
+			}
+		}
+
+		double[] toReturn = new double[distances.length];
+		for (int i = 0; i < distances.length; i++) {
+			toReturn[i] = distances[i] * costPerKm;
+		}
+		return toReturn;
+	}
+
+}
@@ -0,0 +1,142 @@
+package template;
+
+/**
+ * Insert a task that is not planned yet where it costs the least: every
+ * vehicle, every pickup position and every delivery position after it that
+ * keeps the vehicle within its capacity. The delta is then the exact marginal
+ * cost of the task on the routes of the solution.
+ *
+ * The cost of inserting the delivery between two consecutive stops does not
+ * depend on where the pickup goes, so it is computed once per route, making
+ * the search O(n^2) array reads per vehicle.
+ */
+public class InsertMove extends Move {
+
+	private int slot;
+
+	// Best insertion found, the delivery position being the one in the route
+	// before the pickup is added
+	private int vehicle;
+	private int pickupPos;
+	private int deliveryPos;
+
+	// Cost of inserting the delivery before each position of a route
+	private double[] deliveryDelta = new double[0];
+
+	public void set(int slot) {
+		this.slot = slot;
+	}
+
+	public int getVehicle() {
+		return vehicle;
+	}
+
+	@Override
+	public boolean evaluate(Solution solution) {
+		delta = Double.POSITIVE_INFINITY;
+		vehicle = Solution.NONE;
+		for (int v = 0; v < solution.getInstance().getVehicleNumber(); v++) {
+			evaluateVehicle(solution, v);
+		}
+		return found(solution);
+	}
+
+	// Cheapest insertion in the route of the given vehicle only
+	public boolean evaluate(Solution solution, int v) {
+		delta = Double.POSITIVE_INFINITY;
+		vehicle = Solution.NONE;
+		evaluateVehicle(solution, v);
+		return found(solution);
+	}
+
+	// Whether an insertion was found, and if so its fingerprint
+	private boolean found(Solution solution) {
+		if (vehicle == Solution.NONE) {
+			return false;
+		}
+		int v = vehicle;
+		int pickup = Solution.pickupOf(slot);
+		int delivery = Solution.deliveryOf(slot);
+		int length = solution.getTaskNumber(v);
+		int previous = pickupPos == 0 ? Solution.NONE : solution.getStopAt(v, pickupPos - 1);
+		int next = pickupPos == length ? Solution.NONE : solution.getStopAt(v, pickupPos);
+		if (deliveryPos == pickupPos) {
+			fingerprint = solution.getFingerprint() ^ solution.edgeKey(v, previous, pickup)
+					^ solution.edgeKey(v, pickup, delivery) ^ solution.edgeKey(v, delivery, next)
+					^ solution.edgeKey(v, previous, next);
+		}
+		else {
+			int deliveryPrevious = solution.getStopAt(v, deliveryPos - 1);
+			int deliveryNext = deliveryPos == length ? Solution.NONE : solution.getStopAt(v, deliveryPos);
+			fingerprint = solution.getFingerprint() ^ solution.edgeKey(v, previous, pickup)
+					^ solution.edgeKey(v, pickup, next) ^ solution.edgeKey(v, previous, next)
+					^ solution.edgeKey(v, deliveryPrevious, delivery) ^ solution.edgeKey(v, delivery, deliveryNext)
+					^ solution.edgeKey(v, deliveryPrevious, deliveryNext);
+		}
+		return true;
+	}
+
+	// Keep the best insertion in the route of the vehicle if it beats the one
+	// found so far
+	private void evaluateVehicle(Solution solution, int v) {
+		Instance instance = solution.getInstance();
+		int pickup = Solution.pickupOf(slot);
+		int delivery = Solution.deliveryOf(slot);
+		int limit = instance.getCapacity(v) - instance.getWeight(slot);
+		if (limit < 0) {
+			return;
+		}
+
+		int length = solution.getTaskNumber(v);
+		if (deliveryDelta.length < length + 1) {
+			deliveryDelta = new double[2 * (length + 1)];
+		}
+		int previous = Solution.NONE;
+		for (int pos = 0; pos <= length; pos++) {
+			int next = pos == length ? Solution.NONE : solution.getStopAt(v, pos);
+			deliveryDelta[pos] = solution.travelCost(v, previous, delivery) + solution.travelCost(v, delivery, next)
+					- solution.travelCost(v, previous, next);
+			previous = next;
+		}
+
+		previous = Solution.NONE;
+		for (int i = 0; i <= length; i++) {
+			// The vehicle must have room for the task once the stop before is done
+			if (solution.getLoadAfter(v, i - 1) > limit) {
+				previous = solution.getStopAt(v, i);
+				continue;
+			}
+			int next = i == length ? Solution.NONE : solution.getStopAt(v, i);
+
+			// Delivery right after the pickup
+			double cost = solution.travelCost(v, previous, pickup) + solution.travelCost(v, pickup, delivery)
+					+ solution.travelCost(v, delivery, next) - solution.travelCost(v, previous, next);
+			if (cost < delta) {
+				delta = cost;
+				vehicle = v;
+				pickupPos = i;
+				deliveryPos = i;
+			}
+
+			// Delivery later, as long as the task fits in between
+			double pickupCost = solution.travelCost(v, previous, pickup) + solution.travelCost(v, pickup, next)
+					- solution.travelCost(v, previous, next);
+			for (int j = i + 1; j <= length && solution.getLoadAfter(v, j - 1) <= limit; j++) {
+				if (pickupCost + deliveryDelta[j] < delta) {
+					delta = pickupCost + deliveryDelta[j];
+					vehicle = v;
+					pickupPos = i;
+					deliveryPos = j;
+				}
+			}
+			previous = next;
+		}
+	}
+
+	@Override
+	public void apply(Solution solution) {
+		solution.addTaskForVehicle(vehicle, Solution.pickupOf(slot), pickupPos);
+		solution.addTaskForVehicle(vehicle, Solution.deliveryOf(slot), deliveryPos + 1);
+	}
+
+}
@@ -0,0 +1,193 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import logist.simulation.Vehicle;
+import logist.task.Task;
+
+/**
+ * The immutable data of a problem (vehicles and tasks), shared by all the
+ * solutions built on it. Tasks are given a dense slot (in increasing id order)
+ * and their attributes are stored as parallel arrays indexed by that slot.
+ * Travel costs come from the cost matrices of the CostModel.
+ */
+public class Instance {
+
+	private final CostModel costModel;
+	private final List<Vehicle> vehicles;
+	private final Task[] tasks;
+	private final int[] slotById;
+
+	// Task attributes, by slot
+	private final int[] taskId;
+	private final int[] pickupCity;
+	private final int[] deliveryCity;
+	private final int[] weight;
+	// City of each stop (see Solution)
+	private final int[] stopCity;
+
+	// Vehicle attributes, by vehicle index
+	private final int[] capacity;
+	private final int[] startCity;
+	private final double[][] costs;
+	private final int nbCities;
+
+	public Instance(CostModel costModel, List<Vehicle> vehicles, Collection<Task> tasks) {
+		List<Task> sorted = new ArrayList<Task>(tasks);
+		Collections.sort(sorted, new Comparator<Task>() {
+			@Override
+			public int compare(Task t1, Task t2) {
+				return Integer.compare(t1.id, t2.id);
+			}
+		});
+
+		this.costModel = costModel;
+		this.nbCities = costModel.getCityNumber();
+		this.vehicles = new ArrayList<Vehicle>(vehicles);
+		this.tasks = sorted.toArray(new Task[sorted.size()]);
+
+		this.taskId = new int[this.tasks.length];
+		this.pickupCity = new int[this.tasks.length];
+		this.deliveryCity = new int[this.tasks.length];
+		this.weight = new int[this.tasks.length];
+		for (int slot = 0; slot < this.tasks.length; slot++) {
+			Task t = this.tasks[slot];
+			this.taskId[slot] = t.id;
+			this.pickupCity[slot] = t.pickupCity.id;
+			this.deliveryCity[slot] = t.deliveryCity.id;
+			this.weight[slot] = t.weight;
+		}
+		this.slotById = slotsOf(this.taskId);
+		this.stopCity = stopCitiesOf(this.pickupCity, this.deliveryCity);
+
+		this.capacity = new int[this.vehicles.size()];
+		this.startCity = new int[this.vehicles.size()];
+		this.costs = new double[this.vehicles.size()][];
+		for (int v = 0; v < this.vehicles.size(); v++) {
+			Vehicle vehicle = this.vehicles.get(v);
+			this.capacity[v] = vehicle.capacity();
+			this.startCity[v] = vehicle.getCurrentCity().id;
+			this.costs[v] = costModel.getCosts(vehicle.costPerKm());
+		}
+	}
+
+	// Instance over plain arrays, without the logist vehicles and tasks (see
+	// SolverBenchmark): getVehicles is then empty and getTask returns null.
+	// Tasks must be given in increasing id order
+	Instance(CostModel costModel, int[] capacity, int[] startCity, int[] costPerKm, int[] taskId,
+			int[] pickupCity, int[] deliveryCity, int[] weight) {
+		for (int slot = 1; slot < taskId.length; slot++) {
+			if (taskId[slot] <= taskId[slot - 1]) {
+				throw new IllegalArgumentException("Tasks must be sorted by id.");
+			}
+		}
+
+		this.costModel = costModel;
+		this.nbCities = costModel.getCityNumber();
+		this.vehicles = Collections.emptyList();
+		this.tasks = new Task[taskId.length];
+
+		this.taskId = taskId.clone();
+		this.pickupCity = pickupCity.clone();
+		this.deliveryCity = deliveryCity.clone();
+		this.weight = weight.clone();
+		this.slotById = slotsOf(this.taskId);
+		this.stopCity = stopCitiesOf(this.pickupCity, this.deliveryCity);
+
+		this.capacity = capacity.clone();
+		this.startCity = startCity.clone();
+		this.costs = new double[capacity.length][];
+		for (int v = 0; v < capacity.length; v++) {
+			this.costs[v] = costModel.getCosts(costPerKm[v]);
+		}
+	}
+
+	private static int[] slotsOf(int[] taskId) {
+		int maxTaskId = -1;
+		for (int id : taskId) {
+			maxTaskId = Math.max(maxTaskId, id);
+		}
+		int[] slotById = new int[maxTaskId + 1];
+		Arrays.fill(slotById, Solution.NONE);
+		for (int slot = 0; slot < taskId.length; slot++) {
+			slotById[taskId[slot]] = slot;
+		}
+		return slotById;
+	}
+
+	private static int[] stopCitiesOf(int[] pickupCity, int[] deliveryCity) {
+		int[] stopCity = new int[2 * pickupCity.length];
+		for (int slot = 0; slot < pickupCity.length; slot++) {
+			stopCity[Solution.pickupOf(slot)] = pickupCity[slot];
+			stopCity[Solution.deliveryOf(slot)] = deliveryCity[slot];
+		}
+		return stopCity;
+	}
+
+	public CostModel getCostModel() {
+		return this.costModel;
+	}
+
+	public List<Vehicle> getVehicles() {
+		return this.vehicles;
+	}
+
+	public int getVehicleNumber() {
+		return this.capacity.length;
+	}
+
+	public int getTaskNumber() {
+		return this.tasks.length;
+	}
+
+	public Task getTask(int slot) {
+		return this.tasks[slot];
+	}
+
+	public int getTaskId(int slot) {
+		return this.taskId[slot];
+	}
+
+	// Return the slot of the task with this id, or Solution.NONE if absent
+	public int getSlot(int taskId) {
+		if (taskId < 0 || taskId >= this.slotById.length) {
+			return Solution.NONE;
+		}
+		return this.slotById[taskId];
+	}
+
+	public int getPickupCity(int slot) {
+		return this.pickupCity[slot];
+	}
+
+	public int getDeliveryCity(int slot) {
+		return this.deliveryCity[slot];
+	}
+
+	public int getWeight(int slot) {
+		return this.weight[slot];
+	}
+
+	public int getStopCity(int stop) {
+		return this.stopCity[stop];
+	}
+
+	public int getCapacity(int vehicleIdx) {
+		return this.capacity[vehicleIdx];
+	}
+
+	public int getStartCity(int vehicleIdx) {
+		return this.startCity[vehicleIdx];
+	}
+
+	// Cost for the vehicle to drive between the two cities
+	public double getCost(int vehicleIdx, int fromCity, int toCity) {
+		return this.costs[vehicleIdx][fromCity * this.nbCities + toCity];
+	}
+
+}
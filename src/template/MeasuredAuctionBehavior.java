@@ -0,0 +1,112 @@
+package template;
+
+//the list of imports
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import logist.agent.Agent;
+import logist.behavior.AuctionBehavior;
+import logist.plan.Plan;
+import logist.simulation.Vehicle;
+import logist.task.Task;
+import logist.task.TaskDistribution;
+import logist.task.TaskSet;
+import logist.topology.Topology;
+
+/**
+ * Runs the auction agent named by the "delegate-class" property of the agent
+ * and measures it for the TournamentRunner: time of each bid, reward of the
+ * tasks won and cost of the final plans, and the search speed from its
+ * SolverMetrics if it registered some. The results are printed in plan() as a
+ * single line starting with RESULT_PREFIX.
+ */
+public class MeasuredAuctionBehavior implements AuctionBehavior {
+
+	public static final String RESULT_PREFIX = "TOURNAMENT";
+
+	private AuctionBehavior delegate;
+	private Agent agent;
+	private String delegateName;
+
+	private long[] bidNanos = new long[64];
+	private int nbBids = 0;
+	private long reward = 0;
+	private int nbTasksWon = 0;
+
+	@Override
+	public void setup(Topology topology, TaskDistribution distribution, Agent agent) {
+		this.agent = agent;
+		this.delegateName = agent.readProperty("delegate-class", String.class, null);
+		if (delegateName == null) {
+			throw new IllegalArgumentException("No delegate-class given to agent " + agent.name());
+		}
+		try {
+			this.delegate = (AuctionBehavior) Class.forName(delegateName).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Cannot create the agent " + delegateName, e);
+		}
+		delegate.setup(topology, distribution, agent);
+	}
+
+	@Override
+	public Long askPrice(Task task) {
+		long start = System.nanoTime();
+		Long bid = delegate.askPrice(task);
+		if (nbBids == bidNanos.length) {
+			bidNanos = Arrays.copyOf(bidNanos, 2 * nbBids);
+		}
+		bidNanos[nbBids++] = System.nanoTime() - start;
+		return bid;
+	}
+
+	@Override
+	public void auctionResult(Task previous, int winner, Long[] bids) {
+		if (winner == agent.id()) {
+			reward += bids[winner];
+			nbTasksWon++;
+		}
+		delegate.auctionResult(previous, winner, bids);
+	}
+
+	@Override
+	public List<Plan> plan(List<Vehicle> vehicles, TaskSet tasks) {
+		// Read before the delegate unregisters its metrics
+		double iterationsPerSecond = iterationsPerSecond();
+		long start = System.nanoTime();
+		List<Plan> plans = delegate.plan(vehicles, tasks);
+		long planNanos = System.nanoTime() - start;
+
+		double cost = 0;
+		for (int i = 0; i < plans.size(); i++) {
+			cost += plans.get(i).totalDistance() * vehicles.get(i).costPerKm();
+		}
+
+		long[] sorted = Arrays.copyOf(bidNanos, nbBids);
+		Arrays.sort(sorted);
+		long total = 0;
+		for (long nanos : sorted) {
+			total += nanos;
+		}
+		System.out.println(RESULT_PREFIX + " agent=" + agent.name() + " class=" + delegateName + " id=" + agent.id()
+				+ " tasks=" + nbTasksWon + " reward=" + reward + " cost=" + Math.round(cost)
+				+ " profit=" + Math.round(reward - cost) + " bids=" + nbBids
+				+ " bidMeanMs=" + (nbBids == 0 ? 0 : total / nbBids / 1000000)
+				+ " bidP95Ms=" + (nbBids == 0 ? 0 : sorted[Math.min(nbBids - 1, (int) (0.95 * nbBids))] / 1000000)
+				+ " bidMaxMs=" + (nbBids == 0 ? 0 : sorted[nbBids - 1] / 1000000)
+				+ " planMs=" + planNanos / 1000000
+				+ " iterPerSec=" + Math.round(iterationsPerSecond));
+		return plans;
+	}
+
+	// Search speed of the delegate while it bid, 0 if it has no metrics
+	private double iterationsPerSecond() {
+		try {
+			return (Double) ManagementFactory.getPlatformMBeanServer()
+					.getAttribute(SolverMetrics.objectName(agent.name(), agent.id(), SolverMetrics.BID_SOLVER), "IterationsPerSecond");
+		} catch (Exception e) {
+			return 0;
+		}
+	}
+
+}
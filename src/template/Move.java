@@ -0,0 +1,31 @@
+package template;
+
+/**
+ * A neighbor of a solution, described by the change to apply rather than by a
+ * copy of the solution. A move is first evaluated against the solution (which
+ * is left untouched) and only applied if it is accepted, so the instances can
+ * be reused from one iteration to the next.
+ */
+public abstract class Move {
+
+	protected double delta;
+	protected long fingerprint;
+
+	// Cost difference the move would make, valid after a successful evaluate
+	public double getDelta() {
+		return delta;
+	}
+
+	// Fingerprint of the solution the move leads to (see Solution), valid
+	// after a successful evaluate
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	// Compute the delta of the move on the solution, return whether the
+	// resulting solution would be valid
+	public abstract boolean evaluate(Solution solution);
+
+	public abstract void apply(Solution solution);
+
+}
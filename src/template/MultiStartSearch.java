@@ -0,0 +1,93 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Run independent searches on all the cores and collect what they found. The
+ * searches are expected to stop by themselves at the deadline (see
+ * SearchBudget), we only wait a little longer for them and then cancel their
+ * budget: the workers of the pool are not interrupted by Future.cancel.
+ *
+ * The number of threads can be lowered with the system property
+ * PARALLELISM_PROPERTY, e.g. when several agents share the machine.
+ */
+public class MultiStartSearch {
+
+	public static final String PARALLELISM_PROPERTY = "template.parallelism";
+
+	// Time we still wait for a search after the deadline, in ns
+	private static final long GRACE = 20000000;
+
+	private final ExecutorService executor;
+	private final int parallelism;
+
+	public MultiStartSearch() {
+		this(Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors())));
+	}
+
+	public MultiStartSearch(int parallelism) {
+		this.parallelism = parallelism;
+		this.executor = new ForkJoinPool(parallelism);
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	// Return the solution of each search, in order, or null for the ones that
+	// did not finish in time (deadline as System.nanoTime). budgets holds the
+	// budget each search runs with, in the same order
+	public List<Solution> run(List<Callable<Solution>> searches, List<SearchBudget> budgets, long deadline) {
+		List<Future<Solution>> futures = new ArrayList<Future<Solution>>();
+		for (Callable<Solution> search : searches) {
+			futures.add(executor.submit(search));
+		}
+
+		List<Solution> results = new ArrayList<Solution>();
+		for (int i = 0; i < futures.size(); i++) {
+			Future<Solution> future = futures.get(i);
+			Solution result = null;
+			try {
+				long remaining = Math.max(0, deadline + GRACE - System.nanoTime());
+				result = future.get(remaining, TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				budgets.get(i).cancel();
+				future.cancel(true);
+			} catch (InterruptedException e) {
+				// Nobody will wait for the remaining searches either
+				for (int j = i; j < futures.size(); j++) {
+					budgets.get(j).cancel();
+					futures.get(j).cancel(true);
+				}
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("A search failed.", e.getCause());
+			}
+			results.add(result);
+		}
+		return results;
+	}
+
+	public static Solution best(List<Solution> solutions) {
+		Solution best = null;
+		for (Solution s : solutions) {
+			if (s != null && (best == null || best.getTotalCost() > s.getTotalCost())) {
+				best = s;
+			}
+		}
+		return best;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
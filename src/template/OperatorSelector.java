@@ -0,0 +1,191 @@
+package template;
+
+import java.util.SplittableRandom;
+
+/**
+ * Choice of the operator of each iteration of a search: the operators are
+ * drawn by roulette wheel. A fixed selector keeps the weights it is given.
+ *
+ * An adaptive selector (ALNS) learns them from what the operators bring. Each
+ * iteration scores its operator by its outcome (new best solution,
+ * improvement, accepted, or nothing, as in Ropke and Pisinger), and at the end
+ * of each segment of iterations the weight of every operator used moves
+ * towards its score per CPU time, relative to the mean time of an iteration:
+ * a slow operator has to find more to be drawn as often. A share of the draws
+ * stays uniform, so that no operator starves and the weights can follow the
+ * search when what pays off changes.
+ *
+ * Both keep the statistics of the operators. One selector is used by one
+ * search at a time.
+ */
+public class OperatorSelector {
+
+	// Outcomes of an iteration and their scores
+	public static final int NOTHING = 0;
+	public static final int ACCEPTED = 1;
+	public static final int IMPROVED = 2;
+	public static final int NEW_BEST = 3;
+	private static final double[] SCORES = { 0, 13, 9, 33 };
+
+	// Iterations between two updates of the weights, and how much a segment
+	// moves them
+	private static final int SEGMENT = 100;
+	private static final double REACTION = 0.1;
+	// Share of the draws that ignore the weights
+	private static final double UNIFORM_SHARE = 0.1;
+
+	private final int nbOperators;
+	private final double[] weights;
+	private final boolean adaptive;
+
+	// Current segment
+	private final double[] segmentScores;
+	private final long[] segmentNanos;
+	private final long[] segmentUses;
+	private int segmentIterations = 0;
+
+	// Whole run
+	private final long[] uses;
+	private final long[] infeasible;
+	private final long[] accepted;
+	private final long[] newBests;
+	private final double[] improvements;
+	private final long[] nanos;
+
+	// Adaptive selector, all the operators start with the same weight
+	public OperatorSelector(int nbOperators) {
+		this(uniform(nbOperators), true);
+	}
+
+	public OperatorSelector(double[] weights, boolean adaptive) {
+		this.nbOperators = weights.length;
+		this.weights = weights.clone();
+		this.adaptive = adaptive;
+		this.segmentScores = new double[nbOperators];
+		this.segmentNanos = new long[nbOperators];
+		this.segmentUses = new long[nbOperators];
+		this.uses = new long[nbOperators];
+		this.infeasible = new long[nbOperators];
+		this.accepted = new long[nbOperators];
+		this.newBests = new long[nbOperators];
+		this.improvements = new double[nbOperators];
+		this.nanos = new long[nbOperators];
+	}
+
+	private static double[] uniform(int nbOperators) {
+		double[] weights = new double[nbOperators];
+		for (int i = 0; i < nbOperators; i++) {
+			weights[i] = 1;
+		}
+		return weights;
+	}
+
+	// Draw one of the available operators, -1 if none is
+	public int select(boolean[] available, SplittableRandom random) {
+		double total = 0;
+		int nbAvailable = 0;
+		for (int i = 0; i < nbOperators; i++) {
+			if (available[i]) {
+				total += weights[i];
+				nbAvailable++;
+			}
+		}
+		if (nbAvailable == 0) {
+			return -1;
+		}
+
+		double uniformShare = adaptive ? UNIFORM_SHARE : 0;
+		double draw = random.nextDouble();
+		int last = -1;
+		for (int i = 0; i < nbOperators; i++) {
+			if (available[i]) {
+				draw -= (1 - uniformShare) * weights[i] / total + uniformShare / nbAvailable;
+				if (draw < 0) {
+					return i;
+				}
+				last = i;
+			}
+		}
+		// Rounding errors
+		return last;
+	}
+
+	// Outcome of an iteration of the operator, which took the given time and
+	// sampled the given number of infeasible moves; improvement is the cost
+	// decrease of the current solution, if any
+	public void record(int operator, long operatorNanos, int operatorInfeasible, int outcome, double improvement) {
+		uses[operator]++;
+		infeasible[operator] += operatorInfeasible;
+		nanos[operator] += operatorNanos;
+		if (outcome != NOTHING) {
+			accepted[operator]++;
+		}
+		if (outcome == NEW_BEST) {
+			newBests[operator]++;
+		}
+		if (improvement > 0) {
+			improvements[operator] += improvement;
+		}
+
+		segmentScores[operator] += SCORES[outcome];
+		segmentNanos[operator] += operatorNanos;
+		segmentUses[operator]++;
+		segmentIterations++;
+		if (adaptive && segmentIterations == SEGMENT) {
+			updateWeights();
+		}
+	}
+
+	private void updateWeights() {
+		long totalNanos = 0;
+		long totalUses = 0;
+		for (int i = 0; i < nbOperators; i++) {
+			totalNanos += segmentNanos[i];
+			totalUses += segmentUses[i];
+		}
+		double iterationNanos = (double) Math.max(1, totalNanos) / totalUses;
+		for (int i = 0; i < nbOperators; i++) {
+			if (segmentUses[i] > 0) {
+				double value = segmentScores[i] / Math.max(1, segmentNanos[i]) * iterationNanos;
+				weights[i] = (1 - REACTION) * weights[i] + REACTION * value;
+			}
+			segmentScores[i] = 0;
+			segmentNanos[i] = 0;
+			segmentUses[i] = 0;
+		}
+		segmentIterations = 0;
+	}
+
+	public int getOperatorNumber() {
+		return nbOperators;
+	}
+
+	public double getWeight(int operator) {
+		return weights[operator];
+	}
+
+	public long getUses(int operator) {
+		return uses[operator];
+	}
+
+	public long getInfeasible(int operator) {
+		return infeasible[operator];
+	}
+
+	public long getAccepted(int operator) {
+		return accepted[operator];
+	}
+
+	public long getNewBests(int operator) {
+		return newBests[operator];
+	}
+
+	public double getImprovement(int operator) {
+		return improvements[operator];
+	}
+
+	public long getNanos(int operator) {
+		return nanos[operator];
+	}
+
+}
@@ -0,0 +1,153 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+
+import logist.simulation.Vehicle;
+import logist.task.Task;
+
+/**
+ * What we know of one opponent, kept from one auction to the next: its bids
+ * (statistics, and the last one for each route), the tasks it won, and what we
+ * believe it has to pay for them. The opponent's vehicles are unknown, so we
+ * plan with given ones (usually ours).
+ *
+ * For each auction the task is inserted where it costs the least in the
+ * retained solution, and a short search warm-started from there refines the
+ * estimate. If the opponent wins, that solution becomes the retained one, so
+ * the work of the previous auctions is never thrown away. A model without a
+ * solver only follows the bids and keeps no solution.
+ */
+public class OpponentModel {
+
+	private final int agentId;
+	private final Centralized solver;
+	private final CostModel costModel;
+	private final List<Vehicle> vehicles;
+	private final InsertMove insertion = new InsertMove();
+
+	// Bids of the opponent, the last one of each route ([from * nbCities + to],
+	// -1 if none)
+	private final BidStatistics bids;
+	private final long[] lastBids;
+
+	// Tasks won by the opponent, and our solution for them
+	private final List<Task> tasks = new ArrayList<Task>();
+	private Solution solution = null;
+
+	// Estimate with the task being auctioned
+	private Task pendingTask = null;
+	private Solution pending = null;
+
+	public OpponentModel(int agentId, Centralized solver, CostModel costModel, List<Vehicle> vehicles, int window) {
+		this.agentId = agentId;
+		this.solver = solver;
+		this.costModel = costModel;
+		this.vehicles = vehicles;
+		this.bids = new BidStatistics(window);
+		this.lastBids = new long[costModel.getCityNumber() * costModel.getCityNumber()];
+		Arrays.fill(this.lastBids, -1);
+	}
+
+	// A model for every agent of the auction but us (null at our index), the
+	// solver being null to follow the bids only
+	public static OpponentModel[] forAgents(int nbAgents, int ourId, Centralized solver, CostModel costModel,
+			List<Vehicle> vehicles, int window) {
+		OpponentModel[] models = new OpponentModel[nbAgents];
+		for (int id = 0; id < nbAgents; id++) {
+			if (id != ourId) {
+				models[id] = new OpponentModel(id, solver, costModel, vehicles, window);
+			}
+		}
+		return models;
+	}
+
+	public int getAgentId() {
+		return agentId;
+	}
+
+	public BidStatistics getBids() {
+		return bids;
+	}
+
+	// Last bid of the opponent for a task of the same route, -1 if none
+	public long getLastBid(Task task) {
+		return lastBids[task.pickupCity.id * costModel.getCityNumber() + task.deliveryCity.id];
+	}
+
+	// Estimated cost of the tasks won so far
+	public double getCost() {
+		return solution == null ? 0 : solution.getTotalCost();
+	}
+
+	// Start estimating the opponent with the task: the cheapest insertion is the
+	// estimate until setRefined is given the result of the returned search,
+	// which runs with budget
+	public Callable<Solution> estimate(Task task, SearchBudget budget, SplittableRandom random) {
+		if (solver == null) {
+			throw new IllegalStateException("Cannot estimate the costs of an opponent without a solver.");
+		}
+		List<Task> withTask = new ArrayList<Task>(tasks);
+		withTask.add(task);
+		Instance instance = new Instance(costModel, vehicles, withTask);
+
+		Solution warmStart = solution == null ? new Solution(instance) : solution.remapTo(instance);
+		insertion.set(instance.getSlot(task.id));
+		if (insertion.evaluate(warmStart)) {
+			insertion.apply(warmStart);
+		}
+		else {
+			// No vehicle can carry it
+			warmStart = null;
+		}
+		pendingTask = task;
+		pending = warmStart;
+
+		final Solution init = warmStart;
+		return () -> solver.computeCentralized(instance, init, budget, random);
+	}
+
+	// Result of the search of estimate, null if it did not finish in time
+	public void setRefined(Solution refined) {
+		if (refined != null && (pending == null || refined.getTotalCost() < pending.getTotalCost())) {
+			pending = refined;
+		}
+	}
+
+	public double getEstimatedCost() {
+		return pending == null ? Double.POSITIVE_INFINITY : pending.getTotalCost();
+	}
+
+	public double getMarginalCost() {
+		return Math.max(0, getEstimatedCost() - getCost());
+	}
+
+	// Bid is null if the opponent did not bid
+	public void auctionResult(Task task, int winner, Long bid) {
+		if (bid != null) {
+			bids.add(bid);
+			lastBids[task.pickupCity.id * costModel.getCityNumber() + task.deliveryCity.id] = bid;
+		}
+		if (winner == agentId) {
+			if (solver == null) {
+				// Bids only
+				return;
+			}
+			if (pendingTask == null || pendingTask.id != task.id) {
+				// Not estimated (the model did not exist yet), take the cheapest
+				// insertion
+				estimate(task, null, null);
+			}
+			if (pending != null) {
+				tasks.add(task);
+				solution = pending;
+			}
+		}
+		pendingTask = null;
+		pending = null;
+	}
+
+}
@@ -0,0 +1,126 @@
+package template;
+
+/**
+ * Move a segment of 1 to 3 consecutive stops of a route to another place in
+ * the same route (a segment of one stop is a plain relocate). The segment
+ * keeps its order, so only the three edges around the old and the new place
+ * change and the delta is O(1).
+ *
+ * The target is given as the position, in the current route, of the stop the
+ * segment goes before (the length of the route for the end). setSegment counts
+ * the targets that keep every pickup before its delivery and setTarget picks
+ * one of them, so that only the capacity can make a sampled move infeasible.
+ */
+public class OrOptMove extends Move {
+
+	public static final int MAX_SEGMENT = 3;
+
+	private int vehicleIdx;
+	private int from;
+	private int length;
+	private int target;
+
+	// Targets allowed by the pickups and deliveries of the segment, set by
+	// setSegment
+	private int low;
+	private int high;
+
+	private final int[] segment = new int[MAX_SEGMENT];
+
+	// Choose the segment and compute its targets that keep the precedences,
+	// return their number (0 if it cannot move)
+	public int setSegment(Solution solution, int vehicleIdx, int from, int length) {
+		this.vehicleIdx = vehicleIdx;
+		this.from = from;
+		this.length = length;
+		low = 0;
+		high = solution.getTaskNumber(vehicleIdx);
+		for (int pos = from; pos < from + length; pos++) {
+			int stop = solution.getStopAt(vehicleIdx, pos);
+			int pairPos = solution.getPositionOf(Solution.pairOf(stop));
+			if (pairPos >= from && pairPos < from + length) {
+				continue;
+			}
+			if (Solution.isPickup(stop)) {
+				// Before the delivery
+				high = Math.min(high, pairPos);
+			}
+			else {
+				// After the pickup
+				low = Math.max(low, pairPos + 1);
+			}
+		}
+		// The targets from the segment to the stop after it leave it in place
+		return Math.max(0, high - low + 1 - (length + 1));
+	}
+
+	// Choose the target among the ones counted by setSegment, index from 0
+	public void setTarget(int index) {
+		int target = low + index;
+		this.target = target < from ? target : target + length + 1;
+	}
+
+	@Override
+	public boolean evaluate(Solution solution) {
+		int v = vehicleIdx;
+		int to = from + length - 1;
+		int first = solution.getStopAt(v, from);
+		int last = solution.getStopAt(v, to);
+
+		// Capacity: the net load of the segment moves across the stops it jumps
+		// over, and the segment starts from the load before its new place
+		int change = solution.getLoadAfter(v, to) - solution.getLoadAfter(v, from - 1);
+		int capacity = solution.getInstance().getCapacity(v);
+		int base;
+		if (target < from) {
+			base = solution.getLoadAfter(v, target - 1);
+			if (change > 0 && !solution.canCarry(v, target, from - 1, change)) {
+				return false;
+			}
+		}
+		else {
+			base = solution.getLoadAfter(v, target - 1) - change;
+			if (change < 0 && !solution.canCarry(v, to + 1, target - 1, -change)) {
+				return false;
+			}
+		}
+		int load = base;
+		for (int pos = from; pos <= to; pos++) {
+			load += solution.getLoadChange(solution.getStopAt(v, pos));
+			if (load > capacity) {
+				return false;
+			}
+		}
+
+		int before = from == 0 ? Solution.NONE : solution.getStopAt(v, from - 1);
+		int after = to == solution.getTaskNumber(v) - 1 ? Solution.NONE : solution.getStopAt(v, to + 1);
+		int newBefore = target == 0 ? Solution.NONE : solution.getStopAt(v, target - 1);
+		int newAfter = target == solution.getTaskNumber(v) ? Solution.NONE : solution.getStopAt(v, target);
+		delta = solution.travelCost(v, before, after) - solution.travelCost(v, before, first)
+				- solution.travelCost(v, last, after)
+				+ solution.travelCost(v, newBefore, first) + solution.travelCost(v, last, newAfter)
+				- solution.travelCost(v, newBefore, newAfter);
+		fingerprint = solution.getFingerprint() ^ solution.edgeKey(v, before, after)
+				^ solution.edgeKey(v, before, first) ^ solution.edgeKey(v, last, after)
+				^ solution.edgeKey(v, newBefore, first) ^ solution.edgeKey(v, last, newAfter)
+				^ solution.edgeKey(v, newBefore, newAfter);
+		return true;
+	}
+
+	@Override
+	public void apply(Solution solution) {
+		int v = vehicleIdx;
+		// Take the segment out, then put it back before the target stop (the
+		// end of the route if none)
+		int targetStop = target == solution.getTaskNumber(v) ? Solution.NONE : solution.getStopAt(v, target);
+		for (int i = 0; i < length; i++) {
+			segment[i] = solution.getStopAt(v, from);
+			solution.removeTaskForVehicle(v, segment[i]);
+		}
+		int pos = targetStop == Solution.NONE ? solution.getTaskNumber(v) : solution.getPositionOf(targetStop);
+		for (int i = 0; i < length; i++) {
+			solution.addTaskForVehicle(v, segment[i], pos + i);
+		}
+	}
+
+}
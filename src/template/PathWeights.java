@@ -0,0 +1,101 @@
+package template;
+
+import java.util.List;
+
+import logist.task.TaskDistribution;
+import logist.topology.Topology;
+import logist.topology.Topology.City;
+
+/**
+ * How much the roads of a task are used by the tasks of the distribution. Each
+ * road (edge between two neighbor cities, both ways) weighs the probability of
+ * the tasks whose path goes through it; a task is then worth the mean weight
+ * of the roads of its path, and its ratio is that mean over the mean weight of
+ * the used roads, cropped to [0, 2].
+ *
+ * Everything is computed once, at the setup of the agent, in tables indexed by
+ * city ids ([from * nbCities + to]): reading the value of a task is a single
+ * array read.
+ */
+public class PathWeights {
+
+	private final int nbCities;
+	private final double averageEdgeWeight;
+	private final double[] meanWeights;
+	private final double[] ratios;
+
+	public PathWeights(Topology topology, TaskDistribution distribution) {
+		int maxId = -1;
+		for (City c : topology.cities()) {
+			maxId = Math.max(maxId, c.id);
+		}
+		this.nbCities = maxId + 1;
+
+		// Weight of the roads
+		double[] edgeWeights = new double[nbCities * nbCities];
+		boolean[] used = new boolean[nbCities * nbCities];
+		for (City c1 : topology.cities()) {
+			for (City c2 : topology.cities()) {
+				double prob = distribution.probability(c1, c2) / topology.cities().size();
+				if (prob > 0) {
+					City previous = c1;
+					for (City current : c1.pathTo(c2)) {
+						edgeWeights[previous.id * nbCities + current.id] += prob;
+						edgeWeights[current.id * nbCities + previous.id] += prob;
+						used[Math.min(previous.id, current.id) * nbCities + Math.max(previous.id, current.id)] = true;
+						previous = current;
+					}
+				}
+			}
+		}
+
+		double sum = 0;
+		int nbUsed = 0;
+		for (int i = 0; i < used.length; i++) {
+			if (used[i]) {
+				sum += edgeWeights[i];
+				nbUsed++;
+			}
+		}
+		this.averageEdgeWeight = nbUsed == 0 ? 0 : sum / nbUsed;
+
+		// Value of the path of each task
+		this.meanWeights = new double[nbCities * nbCities];
+		this.ratios = new double[nbCities * nbCities];
+		for (City from : topology.cities()) {
+			for (City to : topology.cities()) {
+				List<City> path = from.pathTo(to);
+				int index = from.id * nbCities + to.id;
+				if (path.isEmpty() || averageEdgeWeight == 0) {
+					// No road to weigh, the task is average
+					ratios[index] = 1;
+					continue;
+				}
+				double pathSum = 0;
+				City previous = from;
+				for (City current : path) {
+					pathSum += edgeWeights[previous.id * nbCities + current.id];
+					previous = current;
+				}
+				meanWeights[index] = pathSum / path.size();
+				ratios[index] = Math.min(2.0, Math.max(0d, meanWeights[index] / averageEdgeWeight));
+			}
+		}
+	}
+
+	public double getAverageEdgeWeight() {
+		return averageEdgeWeight;
+	}
+
+	// Mean weight of the roads of the path between the cities
+	public double getMeanWeight(int fromCity, int toCity) {
+		return meanWeights[fromCity * nbCities + toCity];
+	}
+
+	// Mean weight of the path over the mean weight of the used roads, between
+	// 0 and 2 (included)
+	public double getRatio(int fromCity, int toCity) {
+		return ratios[fromCity * nbCities + toCity];
+	}
+
+}
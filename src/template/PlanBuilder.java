@@ -0,0 +1,67 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import logist.plan.Plan;
+import logist.task.Task;
+import logist.topology.Topology;
+import logist.topology.Topology.City;
+
+/**
+ * Turns solutions into logist plans. The shortest paths of the topology are
+ * kept as a next-hop table ([from * nbCities + to] is the city after from on
+ * the way to to), computed once at the setup of the agent, so that building a
+ * plan only walks that table.
+ */
+public class PlanBuilder {
+
+	private final int nbCities;
+	private final City[] cities;
+	private final int[] nextHops;
+
+	public PlanBuilder(Topology topology) {
+		int maxId = -1;
+		for (City c : topology.cities()) {
+			maxId = Math.max(maxId, c.id);
+		}
+		this.nbCities = maxId + 1;
+		this.cities = new City[nbCities];
+		this.nextHops = new int[nbCities * nbCities];
+		for (City from : topology.cities()) {
+			this.cities[from.id] = from;
+			for (City to : topology.cities()) {
+				List<City> path = from.pathTo(to);
+				this.nextHops[from.id * nbCities + to.id] = path.isEmpty() ? to.id : path.get(0).id;
+			}
+		}
+	}
+
+	// One plan per vehicle of the solution, in the order of its vehicles
+	public List<Plan> build(Solution solution) {
+		List<Plan> toReturn = new ArrayList<Plan>();
+		Instance instance = solution.getInstance();
+		for (int v = 0; v < instance.getVehicleNumber(); v++) {
+			int currentCity = instance.getStartCity(v);
+			Plan plan = new Plan(cities[currentCity]);
+			for (int pos = 0; pos < solution.getTaskNumber(v); pos++) {
+				int stop = solution.getStopAt(v, pos);
+				int city = instance.getStopCity(stop);
+				while (currentCity != city) {
+					currentCity = nextHops[currentCity * nbCities + city];
+					plan.appendMove(cities[currentCity]);
+				}
+				Task task = solution.getTask(stop);
+				if (Solution.isPickup(stop)) {
+					plan.appendPickup(task);
+				}
+				else {
+					plan.appendDelivery(task);
+				}
+			}
+			toReturn.add(plan);
+		}
+		return toReturn;
+	}
+
+}
@@ -0,0 +1,250 @@
+package template;
+
+import java.util.SplittableRandom;
+
+/**
+ * Large neighborhood move: remove several tasks from the solution (ruin) and
+ * insert them back where they cost the least (recreate). The tasks removed are
+ * either random, the ones that cost the most where they are, or the ones
+ * related to a random task (close pickups and close deliveries). They come
+ * back one after the other in a random order (greedy), or the one we would
+ * regret the most not to place on its best vehicle first (regret-2).
+ *
+ * The neighbor is built on a scratch copy of the solution, so evaluate costs
+ * a full ruin and recreate, and apply is a copy.
+ */
+public class RuinRecreateMove extends Move {
+
+	public static final int RANDOM = 0;
+	public static final int WORST = 1;
+	public static final int RELATED = 2;
+	public static final int NB_RUINS = 3;
+
+	public static final int GREEDY = 0;
+	public static final int REGRET = 1;
+	public static final int NB_RECREATES = 2;
+
+	// How strongly the worst and related ruins stick to their order: the task
+	// taken is at index n * u^RANDOMNESS of the remaining ones, u uniform
+	private static final double RANDOMNESS = 3;
+
+	private int ruin;
+	private int recreate;
+	private int nbRemoved;
+	private SplittableRandom random;
+
+	private final InsertMove insertion = new InsertMove();
+	private Solution scratch = null;
+
+	// Buffers, grown when needed
+	private int[] slots = new int[0];
+	private double[] keys = new double[0];
+	private double[] costs = new double[0];
+	private boolean[] inserted = new boolean[0];
+
+	public void set(int ruin, int recreate, int nbRemoved, SplittableRandom random) {
+		this.ruin = ruin;
+		this.recreate = recreate;
+		this.nbRemoved = nbRemoved;
+		this.random = random;
+	}
+
+	@Override
+	public boolean evaluate(Solution solution) {
+		Instance instance = solution.getInstance();
+		int nbTasks = instance.getTaskNumber();
+		if (scratch == null || scratch.getInstance() != instance) {
+			scratch = solution.clone();
+		}
+		else {
+			scratch.copyFrom(solution);
+		}
+		if (slots.length < nbTasks) {
+			slots = new int[nbTasks];
+			keys = new double[nbTasks];
+			inserted = new boolean[nbTasks];
+		}
+		int removed = Math.min(nbRemoved, nbTasks);
+
+		// Ruin: the tasks to remove are moved to the front of slots
+		for (int slot = 0; slot < nbTasks; slot++) {
+			slots[slot] = slot;
+		}
+		switch (ruin) {
+		case WORST:
+			// The largest savings first
+			for (int slot = 0; slot < nbTasks; slot++) {
+				keys[slot] = removalDelta(solution, slot);
+			}
+			pickInOrder(nbTasks, removed);
+			break;
+		case RELATED:
+			// The seed first, then the tasks closest to it
+			int seed = random.nextInt(nbTasks);
+			CostModel costModel = instance.getCostModel();
+			for (int slot = 0; slot < nbTasks; slot++) {
+				keys[slot] = slot == seed ? Double.NEGATIVE_INFINITY
+						: costModel.getDistance(instance.getPickupCity(seed), instance.getPickupCity(slot))
+								+ costModel.getDistance(instance.getDeliveryCity(seed), instance.getDeliveryCity(slot));
+			}
+			pickInOrder(nbTasks, removed);
+			break;
+		default:
+			for (int i = 0; i < removed; i++) {
+				swap(i, i + random.nextInt(nbTasks - i));
+			}
+		}
+		for (int i = 0; i < removed; i++) {
+			int pickup = Solution.pickupOf(slots[i]);
+			int vehicle = scratch.getVehicleOf(pickup);
+			scratch.removeTaskForVehicle(vehicle, pickup);
+			scratch.removeTaskForVehicle(vehicle, Solution.deliveryOf(slots[i]));
+		}
+
+		// Recreate
+		boolean feasible;
+		if (recreate == REGRET) {
+			feasible = regretInsertion(removed);
+		}
+		else {
+			feasible = greedyInsertion(removed);
+		}
+		delta = scratch.getTotalCost() - solution.getTotalCost();
+		fingerprint = scratch.getFingerprint();
+		return feasible;
+	}
+
+	@Override
+	public void apply(Solution solution) {
+		solution.copyFrom(scratch);
+	}
+
+	// Insert the removed tasks in a random order, each where it costs the least
+	private boolean greedyInsertion(int removed) {
+		for (int i = 0; i < removed; i++) {
+			swap(i, i + random.nextInt(removed - i));
+			insertion.set(slots[i]);
+			if (!insertion.evaluate(scratch)) {
+				return false;
+			}
+			insertion.apply(scratch);
+		}
+		return true;
+	}
+
+	// Insert first the task with the largest difference between its best and
+	// second best vehicle (or with a single vehicle left), keeping the cost of
+	// each task on each vehicle and updating only the vehicle that changed
+	private boolean regretInsertion(int removed) {
+		int nbVehicles = scratch.getInstance().getVehicleNumber();
+		if (costs.length < removed * nbVehicles) {
+			costs = new double[2 * removed * nbVehicles];
+		}
+		for (int i = 0; i < removed; i++) {
+			inserted[i] = false;
+			insertion.set(slots[i]);
+			for (int v = 0; v < nbVehicles; v++) {
+				costs[i * nbVehicles + v] = insertion.evaluate(scratch, v) ? insertion.getDelta() : Double.POSITIVE_INFINITY;
+			}
+		}
+
+		for (int n = 0; n < removed; n++) {
+			int chosen = -1;
+			int chosenVehicle = -1;
+			double chosenRegret = -1;
+			double chosenBest = 0;
+			for (int i = 0; i < removed; i++) {
+				if (inserted[i]) {
+					continue;
+				}
+				int bestVehicle = -1;
+				double best = Double.POSITIVE_INFINITY;
+				double second = Double.POSITIVE_INFINITY;
+				for (int v = 0; v < nbVehicles; v++) {
+					double cost = costs[i * nbVehicles + v];
+					if (cost < best) {
+						second = best;
+						best = cost;
+						bestVehicle = v;
+					}
+					else if (cost < second) {
+						second = cost;
+					}
+				}
+				if (bestVehicle < 0) {
+					// No vehicle can take it anymore
+					return false;
+				}
+				double regret = second == Double.POSITIVE_INFINITY ? Double.MAX_VALUE : second - best;
+				if (regret > chosenRegret || (regret == chosenRegret && best < chosenBest)) {
+					chosen = i;
+					chosenVehicle = bestVehicle;
+					chosenRegret = regret;
+					chosenBest = best;
+				}
+			}
+
+			insertion.set(slots[chosen]);
+			insertion.evaluate(scratch, chosenVehicle);
+			insertion.apply(scratch);
+			inserted[chosen] = true;
+
+			for (int i = 0; i < removed; i++) {
+				if (!inserted[i]) {
+					insertion.set(slots[i]);
+					costs[i * nbVehicles + chosenVehicle] = insertion.evaluate(scratch, chosenVehicle)
+							? insertion.getDelta() : Double.POSITIVE_INFINITY;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Move to the front of slots the given number of slots, taken in increasing
+	// order of their key with some randomness
+	private void pickInOrder(int count, int removed) {
+		// Insertion sort of the slots by key, the instances are small
+		for (int i = 1; i < count; i++) {
+			int slot = slots[i];
+			int j = i - 1;
+			while (j >= 0 && keys[slots[j]] > keys[slot]) {
+				slots[j + 1] = slots[j];
+				j--;
+			}
+			slots[j + 1] = slot;
+		}
+		for (int i = 0; i < removed; i++) {
+			int index = i + (int) ((count - i) * Math.pow(random.nextDouble(), RANDOMNESS));
+			// Keep the remaining ones in order
+			int slot = slots[index];
+			System.arraycopy(slots, i, slots, i + 1, index - i);
+			slots[i] = slot;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int tmp = slots[i];
+		slots[i] = slots[j];
+		slots[j] = tmp;
+	}
+
+	// Cost difference of taking the task (pickup and delivery) out of its route
+	private static double removalDelta(Solution solution, int slot) {
+		int pickup = Solution.pickupOf(slot);
+		int delivery = Solution.deliveryOf(slot);
+		int v = solution.getVehicleOf(pickup);
+		int before = solution.getPrevious(pickup);
+		int after = solution.getNext(delivery);
+		if (solution.getNext(pickup) == delivery) {
+			return solution.travelCost(v, before, after)
+					- solution.travelCost(v, before, pickup) - solution.travelCost(v, pickup, delivery)
+					- solution.travelCost(v, delivery, after);
+		}
+		int pickupNext = solution.getNext(pickup);
+		int deliveryPrevious = solution.getPrevious(delivery);
+		return solution.travelCost(v, before, pickupNext) + solution.travelCost(v, deliveryPrevious, after)
+				- solution.travelCost(v, before, pickup) - solution.travelCost(v, pickup, pickupNext)
+				- solution.travelCost(v, deliveryPrevious, delivery) - solution.travelCost(v, delivery, after);
+	}
+
+}
@@ -0,0 +1,96 @@
+package template;
+
+/**
+ * How long a search may run: a number of iterations and optionally a deadline
+ * (as System.nanoTime), whichever comes first. A budget can also be cancelled
+ * from another thread; the search then returns the best solution found so far.
+ * The search also stops by itself once it has gone a number of iterations (the
+ * stagnation window) without a new best solution: it returns early and the
+ * rest of the time goes back to the caller. By default the window is what is
+ * left of the budget at the current pace: the search gives up once it has
+ * gone longer without a new best than it could still run.
+ *
+ * The clock is read at every iteration: an iteration can be a whole ruin and
+ * recreate, long enough that skipping reads would overrun the deadline, while
+ * System.nanoTime costs little next to any iteration. A budget is used by one
+ * search at a time.
+ */
+public class SearchBudget {
+
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	public static final int NO_STAGNATION_LIMIT = Integer.MAX_VALUE;
+
+	// Default stagnation window: the iterations left, at least
+	// MIN_STAGNATION_LIMIT
+	private static final int REMAINING_BUDGET = -1;
+	private static final int MIN_STAGNATION_LIMIT = 2000;
+
+	private final int maxIter;
+	private final long start;
+	private final long deadline;
+	private final int stagnationLimit;
+	private volatile boolean cancelled = false;
+
+	// Last call to progress
+	private int iteration = 0;
+	private double progress = 0;
+
+	public SearchBudget(int maxIter) {
+		this(maxIter, NO_DEADLINE);
+	}
+
+	public SearchBudget(int maxIter, long deadline) {
+		this(maxIter, deadline, REMAINING_BUDGET);
+	}
+
+	public SearchBudget(int maxIter, long deadline, int stagnationLimit) {
+		this.maxIter = maxIter;
+		this.start = System.nanoTime();
+		this.deadline = deadline;
+		this.stagnationLimit = stagnationLimit;
+	}
+
+	// Deadline the given number of milliseconds from now
+	public static long deadlineIn(double millis) {
+		return System.nanoTime() + (long) (millis * 1000000);
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	// Whether a search without a new best solution for this many iterations
+	// should stop
+	public boolean isStagnating(int iterationsSinceBest) {
+		if (stagnationLimit != REMAINING_BUDGET) {
+			return iterationsSinceBest >= stagnationLimit;
+		}
+		if (iterationsSinceBest < MIN_STAGNATION_LIMIT || progress == 0) {
+			return false;
+		}
+		// Iterations left at the pace of the iterations so far
+		return iterationsSinceBest >= iteration * (1 - progress) / progress;
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	// Fraction of the budget spent after this iteration, between 0 and 1
+	public double progress(int iteration) {
+		double timeRatio = 0;
+		if (deadline != NO_DEADLINE) {
+			long now = System.nanoTime();
+			timeRatio = now >= deadline ? 1 : (double) (now - start) / (deadline - start);
+		}
+		this.iteration = iteration;
+		progress = Math.min(1, Math.max(timeRatio, (double) iteration / maxIter));
+		return progress;
+	}
+
+}
@@ -1,302 +1,389 @@
 package template;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 import logist.simulation.Vehicle;
 import logist.task.Task;
 import logist.task.TaskSet;
-import logist.topology.Topology.City;
 
+/**
+ * A solution stores the route of each vehicle as a sequence of stops. The stop
+ * of a task is 2 * slot for its pickup and 2 * slot + 1 for its delivery (see
+ * Instance for the slots). The routes are kept in one flat array, vehicle v
+ * owning the range [v * nbStops, (v + 1) * nbStops), together with the reverse
+ * index stop -> (vehicle, position), so that positional lookup, predecessor and
+ * successor are all O(1) and cloning is a few array copies.
+ *
+ * Next to the routes we keep the load of the vehicle after each stop. With the
+ * positions, this lets the moves check capacity and pickup before delivery on
+ * the segment they change only; checkCorrectSolution is the full check, meant
+ * for debugging.
+ *
+ * The solution also keeps a 64 bit fingerprint (Zobrist hash): the XOR of a
+ * pseudo-random key for each edge of the routes, an edge being a stop and the
+ * stop before it (or the start of its vehicle). Adding or removing a stop
+ * changes three edges at most, so the fingerprint follows in O(1), and a move
+ * can give the fingerprint of its neighbor from the edges it changes, the same
+ * way it gives its delta. Two equal solutions have the same fingerprint; two
+ * different ones almost never do.
+ */
 public class Solution {
 
-	private double totalCost;
+	public static final int NONE = -1;
 
-	private AgentTask[] vehiclesFirstTask;
-	private int[] taskCounter;
-	private List<Vehicle> vehicles;
+	private final Instance instance;
+	private final int nbStops;
 
-	public Solution(double totalCost, AgentTask[] vehiclesFirstTask, List<Vehicle> vehicles, int[] taskCounter) {
-		this.totalCost = totalCost;
-		this.vehiclesFirstTask = vehiclesFirstTask.clone();
-		this.vehicles = new ArrayList<Vehicle>(vehicles);
-		this.taskCounter = taskCounter.clone();
+	private double totalCost;
+	private final double[] vehicleCost;
+	private long fingerprint;
+
+	private final int[] routes;
+	private final int[] loads;
+	private final int[] taskCounter;
+	private final int[] stopVehicle;
+	private final int[] stopPosition;
+
+	public Solution(Instance instance) {
+		this.instance = instance;
+		this.nbStops = 2 * instance.getTaskNumber();
+		this.totalCost = 0;
+		this.fingerprint = 0;
+		this.vehicleCost = new double[instance.getVehicleNumber()];
+		this.routes = new int[instance.getVehicleNumber() * nbStops];
+		this.loads = new int[instance.getVehicleNumber() * nbStops];
+		this.taskCounter = new int[instance.getVehicleNumber()];
+		this.stopVehicle = new int[nbStops];
+		this.stopPosition = new int[nbStops];
+		Arrays.fill(this.stopVehicle, NONE);
+		Arrays.fill(this.stopPosition, NONE);
 	}
 
-	public double getTotalCost() {
-		return totalCost;
+	private Solution(Solution toCopy) {
+		this.instance = toCopy.instance;
+		this.nbStops = toCopy.nbStops;
+		this.vehicleCost = new double[toCopy.vehicleCost.length];
+		this.routes = new int[toCopy.routes.length];
+		this.loads = new int[toCopy.loads.length];
+		this.taskCounter = new int[toCopy.taskCounter.length];
+		this.stopVehicle = new int[toCopy.stopVehicle.length];
+		this.stopPosition = new int[toCopy.stopPosition.length];
+		copyFrom(toCopy);
 	}
 
-	public AgentTask[] getVehiclesFirstTask() {
-		return vehiclesFirstTask.clone();
+	// Overwrite this solution with another one over the same instance, without
+	// allocating
+	public void copyFrom(Solution other) {
+		if (other.instance != this.instance) {
+			throw new IllegalArgumentException("Cannot copy a solution of another instance.");
+		}
+		this.totalCost = other.totalCost;
+		this.fingerprint = other.fingerprint;
+		System.arraycopy(other.vehicleCost, 0, this.vehicleCost, 0, this.vehicleCost.length);
+		for (int v = 0; v < other.taskCounter.length; v++) {
+			System.arraycopy(other.routes, v * nbStops, this.routes, v * nbStops, other.taskCounter[v]);
+			System.arraycopy(other.loads, v * nbStops, this.loads, v * nbStops, other.taskCounter[v]);
+		}
+		System.arraycopy(other.taskCounter, 0, this.taskCounter, 0, this.taskCounter.length);
+		System.arraycopy(other.stopVehicle, 0, this.stopVehicle, 0, this.stopVehicle.length);
+		System.arraycopy(other.stopPosition, 0, this.stopPosition, 0, this.stopPosition.length);
 	}
 
-	public List<Vehicle> getVehicles() {
-		return this.vehicles;
+	public static int pickupOf(int slot) {
+		return slot << 1;
 	}
 
-	public int getTaskNumber(int vIdx) {
-		return this.taskCounter[vIdx];
+	public static int deliveryOf(int slot) {
+		return (slot << 1) | 1;
 	}
 
-	public void setVehiclesFirstTask(int i, AgentTask agentTask) {
-		this.vehiclesFirstTask[i] = agentTask;
+	public static int slotOf(int stop) {
+		return stop >> 1;
 	}
 
-	public boolean canChangeTaskOrder() {
-
-		boolean result = false;
-		for(int v : taskCounter) {
-			result |= v > 2;
-		}
-		return result;
+	public static boolean isPickup(int stop) {
+		return (stop & 1) == 0;
+	}
 
+	// The other stop of the same task
+	public static int pairOf(int stop) {
+		return stop ^ 1;
 	}
 
-	public static Solution recreateSolutionWithGoodTasks(Solution toCopy, TaskSet correctTS) {
+	public double getTotalCost() {
+		return totalCost;
+	}
 
-		HashSet<Task> tmpSet = new HashSet<Task>();
-		tmpSet.addAll(correctTS);
+	// Fingerprint of the routes, usable as a key for the solutions of one
+	// instance
+	public long getFingerprint() {
+		return fingerprint;
+	}
 
-		AgentTask[] correctAgentTask = new AgentTask[toCopy.vehiclesFirstTask.length];
+	public double getVehicleCost(int vIdx) {
+		return vehicleCost[vIdx];
+	}
 
-		for(int i = 0; i < toCopy.vehiclesFirstTask.length; i++) {
+	public Instance getInstance() {
+		return this.instance;
+	}
 
-			AgentTask tmp = toCopy.vehiclesFirstTask[i];
-			AgentTask prev = null;
-			while(tmp != null) {
+	public List<Vehicle> getVehicles() {
+		return this.instance.getVehicles();
+	}
 
+	public int getTaskNumber(int vIdx) {
+		return this.taskCounter[vIdx];
+	}
 
+	public int getStopAt(int vehicleIdx, int taskPos) {
+		return this.routes[vehicleIdx * nbStops + taskPos];
+	}
 
-				for(Task t : correctTS) {
+	// Load of the vehicle once the stop at this position is done
+	public int getLoadAfter(int vehicleIdx, int taskPos) {
+		return taskPos < 0 ? 0 : this.loads[vehicleIdx * nbStops + taskPos];
+	}
 
-					if(t.id == tmp.getTask().id) {
+	// Weight the vehicle gains at this stop (negative for a delivery)
+	public int getLoadChange(int stop) {
+		int weight = instance.getWeight(slotOf(stop));
+		return isPickup(stop) ? weight : -weight;
+	}
 
-						AgentTask newAT = tmp.isPickup() ? new AgentTask(t, true) : new AgentTask(t, false);
+	// Whether adding this weight to the load between the two positions
+	// (included) keeps the vehicle within its capacity
+	public boolean canCarry(int vehicleIdx, int fromPos, int toPos, int weight) {
+		int limit = instance.getCapacity(vehicleIdx) - weight;
+		int base = vehicleIdx * nbStops;
+		for (int pos = fromPos; pos <= toPos; pos++) {
+			if (this.loads[base + pos] > limit) {
+				return false;
+			}
+		}
+		return true;
+	}
 
-						if(correctAgentTask[i] == null) {
-							correctAgentTask[i] = newAT;
-						}
+	public int getVehicleOf(int stop) {
+		return this.stopVehicle[stop];
+	}
 
-						if(prev == null) {
-							prev = newAT;
-						} else {
-							prev.setNext(newAT);
-							prev = newAT;
-						}
+	public int getPositionOf(int stop) {
+		return this.stopPosition[stop];
+	}
 
-						break;
-					}
-				}
+	public int getPrevious(int stop) {
+		int pos = this.stopPosition[stop];
+		return pos == 0 ? NONE : getStopAt(this.stopVehicle[stop], pos - 1);
+	}
 
-				tmp = tmp.getNext();
-			}
+	public int getNext(int stop) {
+		int vIdx = this.stopVehicle[stop];
+		int pos = this.stopPosition[stop];
+		return pos == this.taskCounter[vIdx] - 1 ? NONE : getStopAt(vIdx, pos + 1);
+	}
 
-		}
+	public Task getTask(int stop) {
+		return this.instance.getTask(slotOf(stop));
+	}
 
-		return new Solution(toCopy.getTotalCost(), correctAgentTask, toCopy.vehicles, toCopy.taskCounter);
+	public int getCity(int stop) {
+		return instance.getStopCity(stop);
 	}
 
-	@Override
-	public Solution clone() {
-		AgentTask[] vehiclesFirstTask = new AgentTask[this.vehiclesFirstTask.length];
+	public boolean canChangeTaskOrder() {
 
-		for (int vehiclesIdx = 0; vehiclesIdx < this.vehicles.size(); vehiclesIdx++) {
-			AgentTask currentTask = this.vehiclesFirstTask[vehiclesIdx];
-			AgentTask lastTask = null;
+		boolean result = false;
+		for(int v : taskCounter) {
+			result |= v > 2;
+		}
+		return result;
 
-			while (currentTask != null) {
-				AgentTask newTask = new AgentTask(currentTask.getTask(), currentTask.isPickup());
+	}
 
-				if (lastTask == null) {
-					vehiclesFirstTask[vehiclesIdx] = newTask;
+	// Copy the routes into a solution over another instance, dropping the
+	// tasks that it does not contain
+	public Solution remapTo(Instance other) {
+		Solution toReturn = new Solution(other);
+		for (int v = 0; v < this.taskCounter.length; v++) {
+			for (int pos = 0; pos < this.taskCounter[v]; pos++) {
+				int stop = getStopAt(v, pos);
+				int slot = other.getSlot(instance.getTaskId(slotOf(stop)));
+				if (slot != NONE) {
+					int newStop = isPickup(stop) ? pickupOf(slot) : deliveryOf(slot);
+					toReturn.addTaskForVehicle(v, newStop, toReturn.taskCounter[v]);
 				}
-				else {
-					lastTask.setNext(newTask);
-				}
-
-				lastTask = newTask;
-				currentTask = currentTask.getNext();
 			}
 		}
+		return toReturn;
+	}
 
-		return new Solution(totalCost, vehiclesFirstTask, this.vehicles, this.taskCounter);
+	public static Solution recreateSolutionWithGoodTasks(Solution toCopy, TaskSet correctTS) {
+		return toCopy.remapTo(new Instance(toCopy.instance.getCostModel(), toCopy.getVehicles(), correctTS));
+	}
+
+	@Override
+	public Solution clone() {
+		return new Solution(this);
 	}
 
+	// Full check of the solution and of its indexes, for debugging
 	public boolean checkCorrectSolution() {
-		for (int vehiclesIdx = 0; vehiclesIdx < this.vehicles.size(); vehiclesIdx++) {
-			AgentTask currentTask = this.vehiclesFirstTask[vehiclesIdx];
-			Set<Task> toDeliver = new HashSet<Task>();
+		boolean[] toDeliver = new boolean[instance.getTaskNumber()];
+		for (int vehiclesIdx = 0; vehiclesIdx < this.taskCounter.length; vehiclesIdx++) {
 			int currentWeight = 0;
-			while (currentTask != null) {
-				if (currentTask.isPickup()) {
-					boolean added = toDeliver.add(currentTask.getTask());
-					if (!added) {
+			int pending = 0;
+			for (int pos = 0; pos < this.taskCounter[vehiclesIdx]; pos++) {
+				int stop = getStopAt(vehiclesIdx, pos);
+				int slot = slotOf(stop);
+				if (this.stopVehicle[stop] != vehiclesIdx || this.stopPosition[stop] != pos) {
+					return false;
+				}
+				if (isPickup(stop)) {
+					if (toDeliver[slot]) {
 						return false;
 					}
+					toDeliver[slot] = true;
+					pending++;
+					currentWeight += instance.getWeight(slot);
 				}
 				else {
-					boolean removed = toDeliver.remove(currentTask.getTask());
-					if (!removed) {
+					if (!toDeliver[slot]) {
 						return false;
 					}
+					toDeliver[slot] = false;
+					pending--;
+					currentWeight -= instance.getWeight(slot);
 				}
-				if (currentTask.isPickup()) {
-					currentWeight += currentTask.getTask().weight;
-				}
-				else {
-					currentWeight -= currentTask.getTask().weight;
-				}
-				if (currentWeight > this.vehicles.get(vehiclesIdx).capacity()) {
+				if (currentWeight > instance.getCapacity(vehiclesIdx)
+						|| currentWeight != getLoadAfter(vehiclesIdx, pos)) {
 					return false;
 				}
-
-				currentTask = currentTask.getNext();
+			}
+			if (pending != 0) {
+				return false;
 			}
 		}
-		return true;
+		return fingerprint == computeFingerprint();
 	}
 
-	public AgentTask getAgentTaskAt(int vehicleIdx, int taskPos) {
-		AgentTask current = this.vehiclesFirstTask[vehicleIdx];
-		int i = 0;
-		while (current != null) {
-			if (i == taskPos) {
-				return current;
+	// Fingerprint of the routes computed from scratch
+	private long computeFingerprint() {
+		long toReturn = 0;
+		for (int v = 0; v < this.taskCounter.length; v++) {
+			int previous = NONE;
+			for (int pos = 0; pos < this.taskCounter[v]; pos++) {
+				int stop = getStopAt(v, pos);
+				toReturn ^= edgeKey(v, previous, stop);
+				previous = stop;
 			}
-			current = current.getNext();
-			i++;
 		}
-		return null;
+		return toReturn;
 	}
 
-	public void addTaskForVehicle(int vehicleIdx, AgentTask toAdd, AgentTask taskBeforeToAdd) {
-		if (taskBeforeToAdd == null) {
-			// Means first position
-			toAdd.setNext(this.vehiclesFirstTask[vehicleIdx]);
-			this.vehiclesFirstTask[vehicleIdx] = toAdd;
-			recomputeCostWhenAddingTask(taskBeforeToAdd, toAdd, toAdd.getNext(), this.vehicles.get(vehicleIdx));
-			this.taskCounter[vehicleIdx]++;
-
-			return;
+	public void addTaskForVehicle(int vehicleIdx, int stop, int pos) {
+		int length = this.taskCounter[vehicleIdx];
+		if (pos < 0 || pos > length) {
+			throw new IllegalArgumentException("Cannot add task at position " + pos + " in a route of " + length + " tasks.");
 		}
-
-		if (this.vehiclesFirstTask[vehicleIdx] == null) {
-			throw new IllegalStateException("Cannot add task not at the first place when no task for vehicle.");
+		if (this.stopVehicle[stop] != NONE) {
+			throw new IllegalStateException("Cannot add a task already planned.");
 		}
 
-		this.taskCounter[vehicleIdx]++;
+		int base = vehicleIdx * nbStops;
+		int lastTask = pos == 0 ? NONE : this.routes[base + pos - 1];
+		int next = pos == length ? NONE : this.routes[base + pos];
 
-		AgentTask temp = taskBeforeToAdd.getNext();
-		taskBeforeToAdd.setNext(toAdd);
-		toAdd.setNext(temp);
-		recomputeCostWhenAddingTask(taskBeforeToAdd, toAdd, temp, this.vehicles.get(vehicleIdx));
+		System.arraycopy(this.routes, base + pos, this.routes, base + pos + 1, length - pos);
+		this.routes[base + pos] = stop;
+		this.taskCounter[vehicleIdx]++;
+		this.stopVehicle[stop] = vehicleIdx;
+		updateIndexes(vehicleIdx, pos, length + 1);
 
+		recomputeCostWhenAddingTask(lastTask, stop, next, vehicleIdx);
 	}
 
-	private void recomputeCostWhenAddingTask(AgentTask lastTask, AgentTask toAdd, AgentTask next, Vehicle vehicle) {
-		City lastCity = null;
-		City city = toAdd.isPickup() ? toAdd.getTask().pickupCity : toAdd.getTask().deliveryCity;
-		City nextCity = null;
-
-		if (lastTask != null) {
-			lastCity = lastTask.isPickup() ? lastTask.getTask().pickupCity : lastTask.getTask().deliveryCity;;
-		}
+	private void recomputeCostWhenAddingTask(int lastTask, int toAdd, int next, int vehicleIdx) {
+		double delta = travelCost(vehicleIdx, lastTask, toAdd) + travelCost(vehicleIdx, toAdd, next)
+				- travelCost(vehicleIdx, lastTask, next);
+		this.vehicleCost[vehicleIdx] += delta;
+		this.totalCost += delta;
+		this.fingerprint ^= edgeKey(vehicleIdx, lastTask, toAdd) ^ edgeKey(vehicleIdx, toAdd, next)
+				^ edgeKey(vehicleIdx, lastTask, next);
+	}
 
-		if (next != null) {
-			nextCity = next.isPickup() ? next.getTask().pickupCity : next.getTask().deliveryCity;;
+	// Return the position the task had
+	public int removeTaskForVehicle(int vehicleIdx, int stop) {
+		if (this.stopVehicle[stop] != vehicleIdx) {
+			throw new IllegalStateException("Cannot remove a task not planned for this vehicle.");
 		}
 
-		if (lastTask == null) {
-			this.totalCost += (vehicle.getCurrentCity().distanceTo(city)) * vehicle.costPerKm();
-			if (next == null) {
-				// Nothing to do more
-			}
-			else {
-				this.totalCost += (nextCity.distanceTo(city)) * vehicle.costPerKm();
-				this.totalCost -= (vehicle.getCurrentCity().distanceTo(nextCity)) * vehicle.costPerKm();
-			}
-		}
-		else {
-			if (next == null) {
-				this.totalCost += (lastCity.distanceTo(city)) * vehicle.costPerKm();
-			}
-			else {
-				this.totalCost += (lastCity.distanceTo(city)) * vehicle.costPerKm();
-				this.totalCost += (nextCity.distanceTo(city)) * vehicle.costPerKm();
-				this.totalCost -= (lastCity.distanceTo(nextCity)) * vehicle.costPerKm();
-			}
-		}
-
-	}
+		int base = vehicleIdx * nbStops;
+		int length = this.taskCounter[vehicleIdx];
+		int pos = this.stopPosition[stop];
+		int lastTask = pos == 0 ? NONE : this.routes[base + pos - 1];
+		int next = pos == length - 1 ? NONE : this.routes[base + pos + 1];
 
-	// Return prev and the one we remove
-	public List<AgentTask> removeTaskForVehicle(int vehicleIdx, Task task, boolean b) {
-		AgentTask current = this.vehiclesFirstTask[vehicleIdx];
-		AgentTask lastTask = null;
+		System.arraycopy(this.routes, base + pos + 1, this.routes, base + pos, length - pos - 1);
 		this.taskCounter[vehicleIdx]--;
-		while (current != null) {
-			if (current.getTask().equals(task) && current.isPickup() == b) {
-				if (lastTask == null) {
-					this.vehiclesFirstTask[vehicleIdx] = current.getNext();
-				}
-				else {
-					lastTask.setNext(current.getNext());
-				}
-				this.recomputeCostWhenRemovingTask(lastTask, current, current.getNext(), this.vehicles.get(vehicleIdx));
-				current.setNext(null);
-				List<AgentTask> toReturn = new ArrayList<AgentTask>();
-				toReturn.add(lastTask);
-				toReturn.add(current);
-				return toReturn;
-			}
-			lastTask = current;
-			current = current.getNext();
-		}
-		return null;
-	}
+		this.stopVehicle[stop] = NONE;
+		this.stopPosition[stop] = NONE;
+		updateIndexes(vehicleIdx, pos, length - 1);
 
-	public List<AgentTask> removeTaskForVehicle(int vehicleIdx, AgentTask aTask) {
-		return removeTaskForVehicle(vehicleIdx, aTask.getTask(), aTask.isPickup());
+		recomputeCostWhenRemovingTask(lastTask, stop, next, vehicleIdx);
+		return pos;
 	}
 
-	public void recomputeCostWhenRemovingTask(AgentTask lastTask, AgentTask current, AgentTask next, Vehicle vehicle) {
-		City lastCity = null;
-		City city = current.isPickup() ? current.getTask().pickupCity : current.getTask().deliveryCity;
-		City nextCity = null;
+	private void recomputeCostWhenRemovingTask(int lastTask, int current, int next, int vehicleIdx) {
+		double delta = travelCost(vehicleIdx, lastTask, current) + travelCost(vehicleIdx, current, next)
+				- travelCost(vehicleIdx, lastTask, next);
+		this.vehicleCost[vehicleIdx] -= delta;
+		this.totalCost -= delta;
+		this.fingerprint ^= edgeKey(vehicleIdx, lastTask, current) ^ edgeKey(vehicleIdx, current, next)
+				^ edgeKey(vehicleIdx, lastTask, next);
+	}
 
-		if (lastTask != null) {
-			lastCity = lastTask.isPickup() ? lastTask.getTask().pickupCity : lastTask.getTask().deliveryCity;;
+	// Refresh positions and loads of the route from a position to its end
+	private void updateIndexes(int vehicleIdx, int fromPos, int length) {
+		int base = vehicleIdx * nbStops;
+		int load = getLoadAfter(vehicleIdx, fromPos - 1);
+		for (int i = fromPos; i < length; i++) {
+			int stop = this.routes[base + i];
+			load += getLoadChange(stop);
+			this.stopPosition[stop] = i;
+			this.loads[base + i] = load;
 		}
+	}
 
-		if (next != null) {
-			nextCity = next.isPickup() ? next.getTask().pickupCity : next.getTask().deliveryCity;;
+	// Cost for the vehicle to go from one stop to the other, NONE being the
+	// start of the route as origin and the end of the route as destination
+	public double travelCost(int vehicleIdx, int fromStop, int toStop) {
+		if (toStop == NONE) {
+			return 0;
 		}
+		int fromCity = fromStop == NONE ? instance.getStartCity(vehicleIdx) : instance.getStopCity(fromStop);
+		return instance.getCost(vehicleIdx, fromCity, instance.getStopCity(toStop));
+	}
 
-		if (lastTask == null) {
-			this.totalCost -= (vehicle.getCurrentCity().distanceTo(city)) * vehicle.costPerKm();
-			if (next == null) {
-				// Nothing to do more
-				assert(this.totalCost == 0d);
-			}
-			else {
-				this.totalCost -= (nextCity.distanceTo(city)) * vehicle.costPerKm();
-				this.totalCost += (vehicle.getCurrentCity().distanceTo(nextCity)) * vehicle.costPerKm();
-			}
-		}
-		else {
-			if (next == null) {
-				this.totalCost -= (lastCity.distanceTo(city)) * vehicle.costPerKm();
-			}
-			else {
-				this.totalCost -= (lastCity.distanceTo(city)) * vehicle.costPerKm();
-				this.totalCost -= (nextCity.distanceTo(city)) * vehicle.costPerKm();
-				this.totalCost += (lastCity.distanceTo(nextCity)) * vehicle.costPerKm();
-			}
+	// Key of the edge between two stops in the fingerprint, with the same
+	// conventions as travelCost: XOR the keys of the edges a change removes and
+	// adds to get the fingerprint after it
+	public long edgeKey(int vehicleIdx, int fromStop, int toStop) {
+		if (toStop == NONE) {
+			return 0;
 		}
+		long from = fromStop == NONE ? nbStops + vehicleIdx : fromStop;
+		return mix(from * nbStops + toStop);
+	}
 
+	// Finalizer of SplitMix64: a different pseudo-random key for each edge
+	// without a table
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 
 }
@@ -0,0 +1,387 @@
+package template;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import logist.agent.Agent;
+import logist.behavior.AuctionBehavior;
+import logist.plan.Plan;
+import logist.simulation.Vehicle;
+import logist.task.Task;
+import logist.task.TaskDistribution;
+import logist.task.TaskSet;
+import logist.topology.Topology;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Benchmarks of the solver and of the bid computation.
+ *
+ * The solver benchmarks run without the logist platform: the topologies are
+ * read from their xml files and the instances are built from plain arrays,
+ * with vehicles and tasks as in config/auction.xml. Each benchmark is warmed
+ * up, then run in samples of a batch of operations sized to last about a
+ * millisecond. We report the throughput, percentiles of the time per
+ * operation over the samples (exact latencies once a batch is a single
+ * operation) and the bytes allocated per operation by the benchmark thread.
+ *
+ * The bid benchmark (see Bids) measures the real askPrice of AuctionTemplate.
+ * Only the platform builds topologies and tasks, and AuctionTemplate reads its
+ * timeouts from it, so this one runs as an agent in a game.
+ *
+ * From the root of the project, with logist.jar where the TournamentRunner
+ * expects it:
+ *
+ *   javac -cp ../logist/logist.jar -d bin src/template/*.java
+ *   java -cp bin:../logist/logist.jar template.SolverBenchmark [-tasks n] [-time seconds] [topology.xml ...]
+ *
+ * and for the bid benchmark, once an agent of config/agents.xml named
+ * auction-bid-benchmark has the class-name template.SolverBenchmark$Bids:
+ *
+ *   java -jar ../logist/logist.jar config/auction.xml auction-bid-benchmark auction-main
+ */
+public class SolverBenchmark {
+
+	private static final String[] TOPOLOGIES = { "config/topology/england.xml", "config/topology/france.xml",
+			"config/topology/switzerland.xml", "config/topology/the_netherlands.xml" };
+
+	private static final int NB_VEHICLES = 2;
+	private static final int CAPACITY = 30;
+	private static final int COST_PER_KM = 5;
+	private static final int TASK_WEIGHT = 3;
+
+	private static final int POOL_SIZE = 10;
+	private static final int SEARCH_ITER = 10000;
+
+	private static final int MIN_SAMPLES = 5;
+	private static final int MAX_SAMPLES = 1000;
+	private static final long SAMPLE_NANOS = 1000000;
+
+	// Results end up here, so that the JIT cannot drop the benchmarked code
+	private static volatile double sink;
+
+	private interface Operation {
+		double run();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int nbTasks = 30;
+		double seconds = 2;
+		List<String> topologies = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-tasks")) {
+				nbTasks = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-time")) {
+				seconds = Double.parseDouble(args[++i]);
+			}
+			else {
+				topologies.add(args[i]);
+			}
+		}
+		if (topologies.isEmpty()) {
+			topologies.addAll(Arrays.asList(TOPOLOGIES));
+		}
+
+		printHeader();
+		for (String file : topologies) {
+			benchmarkTopology(file, nbTasks, seconds);
+		}
+	}
+
+	private static void benchmarkTopology(String file, int nbTasks, double seconds) {
+		String name = new File(file).getName().replace(".xml", "");
+		final CostModel costModel = loadCostModel(file);
+		final SplittableRandom random = new SplittableRandom(nbTasks);
+		final Instance instance = createInstance(costModel, nbTasks, random);
+		final Centralized centralized = new Centralized(POOL_SIZE, SEARCH_ITER, costModel);
+
+		final Solution solution = centralized.computeCentralized(instance, null, new SearchBudget(SEARCH_ITER), random.split());
+		// The last task is the one to bid on
+		final int lastSlot = nbTasks - 1;
+		final Solution committed = solution.clone();
+		int lastVehicle = committed.getVehicleOf(Solution.pickupOf(lastSlot));
+		committed.removeTaskForVehicle(lastVehicle, Solution.pickupOf(lastSlot));
+		committed.removeTaskForVehicle(lastVehicle, Solution.deliveryOf(lastSlot));
+
+		final SwapMove swap = new SwapMove();
+		final TransferMove transfer = new TransferMove();
+		final InsertMove insertion = new InsertMove();
+		insertion.set(lastSlot);
+		final int[] nextSlot = new int[1];
+
+		measure(name, "clone", seconds, new Operation() {
+			@Override
+			public double run() {
+				return solution.clone().getTotalCost();
+			}
+		});
+		measure(name, "checkCorrectSolution", seconds, new Operation() {
+			@Override
+			public double run() {
+				return solution.checkCorrectSolution() ? 1 : 0;
+			}
+		});
+		measure(name, "remove/add task", seconds, new Operation() {
+			@Override
+			public double run() {
+				int slot = nextSlot[0]++ % instance.getTaskNumber();
+				int pickup = Solution.pickupOf(slot);
+				int delivery = Solution.deliveryOf(slot);
+				int v = solution.getVehicleOf(pickup);
+				int pickupPos = solution.removeTaskForVehicle(v, pickup);
+				int deliveryPos = solution.removeTaskForVehicle(v, delivery);
+				solution.addTaskForVehicle(v, delivery, deliveryPos);
+				solution.addTaskForVehicle(v, pickup, pickupPos);
+				return solution.getTotalCost();
+			}
+		});
+		if (solution.canChangeTaskOrder()) {
+			measure(name, "swap neighbor", seconds, new Operation() {
+				@Override
+				public double run() {
+					centralized.changingTaskOrder(solution, swap, random);
+					return swap.getDelta();
+				}
+			});
+		}
+		measure(name, "transfer neighbor", seconds, new Operation() {
+			@Override
+			public double run() {
+				centralized.changingVehicle(solution, transfer, random);
+				return transfer.getDelta();
+			}
+		});
+		measure(name, "cheapest insertion", seconds, new Operation() {
+			@Override
+			public double run() {
+				insertion.evaluate(committed);
+				return insertion.getDelta();
+			}
+		});
+		measure(name, "computeCentralized", seconds, new Operation() {
+			@Override
+			public double run() {
+				return centralized.computeCentralized(instance, null, new SearchBudget(SEARCH_ITER), random.split())
+						.getTotalCost();
+			}
+		});
+	}
+
+	private static void measure(String topology, String benchmark, double seconds, Operation operation) {
+		long budget = (long) (seconds * 1e9);
+
+		// Warm up, and find how many operations make a sample
+		int batch = 1;
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < budget / 2) {
+			long sampleStart = System.nanoTime();
+			for (int i = 0; i < batch; i++) {
+				sink += operation.run();
+			}
+			if (System.nanoTime() - sampleStart < SAMPLE_NANOS) {
+				batch *= 2;
+			}
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long allocatedBefore = allocatedBytes(threads);
+		long[] samples = new long[MAX_SAMPLES];
+		int nbSamples = 0;
+		long measured = 0;
+		start = System.nanoTime();
+		while (nbSamples < MIN_SAMPLES || (nbSamples < MAX_SAMPLES && System.nanoTime() - start < budget / 2)) {
+			long sampleStart = System.nanoTime();
+			for (int i = 0; i < batch; i++) {
+				sink += operation.run();
+			}
+			long elapsed = System.nanoTime() - sampleStart;
+			samples[nbSamples++] = elapsed / batch;
+			measured += elapsed;
+		}
+		long allocated = allocatedBytes(threads) - allocatedBefore;
+		print(topology, benchmark, samples, nbSamples, (long) nbSamples * batch, measured, allocatedBefore < 0 ? -1 : allocated);
+	}
+
+	private static void printHeader() {
+		System.out.printf("%-16s %-22s %12s %10s %10s %10s %10s %12s%n", "topology", "benchmark", "ops/s",
+				"p50 (us)", "p90 (us)", "p99 (us)", "max (us)", "bytes/op");
+	}
+
+	// One line of results, from the time per operation of each sample; a
+	// negative allocation is unknown
+	private static void print(String topology, String benchmark, long[] samples, int nbSamples, long nbOperations,
+			long measured, long allocated) {
+		Arrays.sort(samples, 0, nbSamples);
+		System.out.printf("%-16s %-22s %12.1f %10.2f %10.2f %10.2f %10.2f %12s%n", topology, benchmark,
+				nbOperations * 1e9 / measured, percentile(samples, nbSamples, 0.5) / 1e3,
+				percentile(samples, nbSamples, 0.9) / 1e3, percentile(samples, nbSamples, 0.99) / 1e3,
+				samples[nbSamples - 1] / 1e3, allocated < 0 ? "n/a" : String.valueOf(allocated / nbOperations));
+	}
+
+	private static long percentile(long[] sorted, int length, double p) {
+		return sorted[Math.min(length - 1, (int) (p * length))];
+	}
+
+	// Bytes allocated so far by the current thread, -1 if the JVM cannot tell
+	private static long allocatedBytes(ThreadMXBean threads) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	// Shortest distances between the cities of a topology file, the cities
+	// being numbered in the order of the file as logist does
+	private static CostModel loadCostModel(String file) {
+		Document document;
+		try {
+			document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(file));
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Cannot read the topology " + file, e);
+		}
+
+		NodeList cities = document.getElementsByTagName("city");
+		int nbCities = cities.getLength();
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		for (int i = 0; i < nbCities; i++) {
+			ids.put(((Element) cities.item(i)).getAttribute("name"), i);
+		}
+
+		double[] distances = new double[nbCities * nbCities];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		for (int i = 0; i < nbCities; i++) {
+			distances[i * nbCities + i] = 0;
+		}
+		NodeList routes = document.getElementsByTagName("route");
+		for (int i = 0; i < routes.getLength(); i++) {
+			Element route = (Element) routes.item(i);
+			int from = ids.get(route.getAttribute("from"));
+			int to = ids.get(route.getAttribute("to"));
+			double distance = Double.parseDouble(route.getAttribute("distance"));
+			distances[from * nbCities + to] = Math.min(distances[from * nbCities + to], distance);
+			distances[to * nbCities + from] = distances[from * nbCities + to];
+		}
+		for (int k = 0; k < nbCities; k++) {
+			for (int i = 0; i < nbCities; i++) {
+				for (int j = 0; j < nbCities; j++) {
+					double through = distances[i * nbCities + k] + distances[k * nbCities + j];
+					if (through < distances[i * nbCities + j]) {
+						distances[i * nbCities + j] = through;
+					}
+				}
+			}
+		}
+
+		int[] costPerKms = new int[NB_VEHICLES];
+		Arrays.fill(costPerKms, COST_PER_KM);
+		return new CostModel(nbCities, distances, costPerKms);
+	}
+
+	private static Instance createInstance(CostModel costModel, int nbTasks, SplittableRandom random) {
+		int nbCities = costModel.getCityNumber();
+		int[] capacity = new int[NB_VEHICLES];
+		int[] startCity = new int[NB_VEHICLES];
+		int[] costPerKm = new int[NB_VEHICLES];
+		for (int v = 0; v < NB_VEHICLES; v++) {
+			capacity[v] = CAPACITY;
+			startCity[v] = random.nextInt(nbCities);
+			costPerKm[v] = COST_PER_KM;
+		}
+
+		int[] taskId = new int[nbTasks];
+		int[] pickupCity = new int[nbTasks];
+		int[] deliveryCity = new int[nbTasks];
+		int[] weight = new int[nbTasks];
+		for (int slot = 0; slot < nbTasks; slot++) {
+			taskId[slot] = slot;
+			pickupCity[slot] = random.nextInt(nbCities);
+			// Any other city
+			deliveryCity[slot] = (pickupCity[slot] + 1 + random.nextInt(nbCities - 1)) % nbCities;
+			weight[slot] = TASK_WEIGHT;
+		}
+		return new Instance(costModel, capacity, startCity, costPerKm, taskId, pickupCity, deliveryCity, weight);
+	}
+
+	/**
+	 * The bid benchmark, an auction agent: it bids with an AuctionTemplate of
+	 * its own, set up with a stub of the agent that turns its log off, and
+	 * times each call to its askPrice. The results are printed in plan() as a
+	 * line of the solver benchmarks.
+	 */
+	public static class Bids implements AuctionBehavior {
+
+		private final AuctionTemplate template = new AuctionTemplate();
+		private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		private long[] bidNanos = new long[64];
+		private int nbBids = 0;
+		private long measured = 0;
+		private long allocated = 0;
+
+		@Override
+		public void setup(Topology topology, TaskDistribution distribution, Agent agent) {
+			template.setup(topology, distribution, stubAgent(agent));
+		}
+
+		@Override
+		public Long askPrice(Task task) {
+			long allocatedBefore = allocatedBytes(threads);
+			long start = System.nanoTime();
+			Long bid = template.askPrice(task);
+			long elapsed = System.nanoTime() - start;
+			allocated = allocatedBefore < 0 ? -1 : allocated + allocatedBytes(threads) - allocatedBefore;
+			if (nbBids == bidNanos.length) {
+				bidNanos = Arrays.copyOf(bidNanos, 2 * nbBids);
+			}
+			bidNanos[nbBids++] = elapsed;
+			measured += elapsed;
+			return bid;
+		}
+
+		@Override
+		public void auctionResult(Task previous, int winner, Long[] bids) {
+			template.auctionResult(previous, winner, bids);
+		}
+
+		@Override
+		public List<Plan> plan(List<Vehicle> vehicles, TaskSet tasks) {
+			if (nbBids > 0) {
+				printHeader();
+				print("game", "askPrice", bidNanos, nbBids, nbBids, measured, allocated < 0 ? -1 : allocated);
+			}
+			return template.plan(vehicles, tasks);
+		}
+
+	}
+
+	// The agent as the benchmarked template sees it: the agent itself, but for
+	// the log level
+	private static Agent stubAgent(final Agent agent) {
+		return (Agent) Proxy.newProxyInstance(Agent.class.getClassLoader(), new Class<?>[] { Agent.class },
+				(proxy, method, args) -> {
+					if (method.getName().equals("readProperty") && "log-level".equals(args[0])) {
+						return "off";
+					}
+					try {
+						return method.invoke(agent, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+}
@@ -0,0 +1,321 @@
+package template;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of a solver and of the bids of an agent, registered as an MBean
+ * so that budgets can be tuned from what happens in real games. Each solver of
+ * an agent (the bids, the background optimizer) has its own MBean.
+ *
+ * The searches count in local variables and add their totals once per run, the
+ * bids record the duration of each phase of askPrice in lock-free histograms:
+ * nothing is allocated or locked while searching.
+ */
+public class SolverMetrics implements SolverMetricsMBean {
+
+	// Solvers of an agent
+	public static final String BID_SOLVER = "bid";
+	public static final String BACKGROUND_SOLVER = "background";
+
+	// Phases of askPrice
+	public static final int INSERTION = 0;
+	public static final int SEARCH = 1;
+	public static final int STRATEGY = 2;
+	public static final int BID = 3;
+	private static final String[] PHASES = { "insertion", "search", "strategy", "bid" };
+
+	// Number of bids whose best cost is kept
+	private static final int HISTORY = 256;
+
+	private final long start = System.nanoTime();
+
+	private final LongAdder runs = new LongAdder();
+	private final LongAdder iterations = new LongAdder();
+	private final LongAdder searchNanos = new LongAdder();
+	private final LongAdder moves = new LongAdder();
+	private final LongAdder infeasibleMoves = new LongAdder();
+	private final LongAdder acceptedMoves = new LongAdder();
+	private final LongAdder reheats = new LongAdder();
+	private final LongAdder stagnatedRuns = new LongAdder();
+	private final LongAdder tabuMoves = new LongAdder();
+
+	private final LongAdder bids = new LongAdder();
+	private final LongAdder bidsCut = new LongAdder();
+	private final LongAdder bidRuns = new LongAdder();
+	private final LongAdder bidRunsCompleted = new LongAdder();
+	private final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+
+	// Per operator of the search
+	private final LongAdder[] operatorUses = new LongAdder[Centralized.OPERATORS.length];
+	private final LongAdder[] operatorInfeasible = new LongAdder[Centralized.OPERATORS.length];
+	private final LongAdder[] operatorAccepted = new LongAdder[Centralized.OPERATORS.length];
+	private final LongAdder[] operatorNewBests = new LongAdder[Centralized.OPERATORS.length];
+	private final LongAdder[] operatorNanos = new LongAdder[Centralized.OPERATORS.length];
+	private final DoubleAdder[] operatorImprovements = new DoubleAdder[Centralized.OPERATORS.length];
+	private volatile double[] operatorWeights = new double[Centralized.OPERATORS.length];
+
+	// Written by the agent thread only, as a ring
+	private final double[] bestCosts = new double[HISTORY];
+	private final long[] bestCostTimes = new long[HISTORY];
+	private volatile long nbBestCosts = 0;
+
+	private ObjectName name = null;
+
+	public SolverMetrics() {
+		for (int i = 0; i < phases.length; i++) {
+			phases[i] = new LatencyHistogram();
+		}
+		for (int i = 0; i < Centralized.OPERATORS.length; i++) {
+			operatorUses[i] = new LongAdder();
+			operatorInfeasible[i] = new LongAdder();
+			operatorAccepted[i] = new LongAdder();
+			operatorNewBests[i] = new LongAdder();
+			operatorNanos[i] = new LongAdder();
+			operatorImprovements[i] = new DoubleAdder();
+		}
+	}
+
+	// Name of the MBean of a solver of an agent
+	public static ObjectName objectName(String agentName, int agentId, String solver) throws JMException {
+		return new ObjectName("template:type=SolverMetrics,agent=" + ObjectName.quote(agentName) + ",id=" + agentId
+				+ ",solver=" + solver);
+	}
+
+	public void register(String agentName, int agentId, String solver) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName toRegister = objectName(agentName, agentId, solver);
+			if (server.isRegistered(toRegister)) {
+				server.unregisterMBean(toRegister);
+			}
+			server.registerMBean(this, toRegister);
+			name = toRegister;
+		} catch (JMException e) {
+			System.out.println("Cannot register the solver metrics: " + e.getMessage());
+		}
+	}
+
+	public void unregister() {
+		if (name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch (JMException e) {
+				// Already gone
+			}
+			name = null;
+		}
+	}
+
+	// Totals of one search run
+	public void recordRun(long runIterations, long runMoves, long runInfeasibleMoves, long runAcceptedMoves,
+			long runNanos) {
+		runs.increment();
+		iterations.add(runIterations);
+		moves.add(runMoves);
+		infeasibleMoves.add(runInfeasibleMoves);
+		acceptedMoves.add(runAcceptedMoves);
+		searchNanos.add(runNanos);
+	}
+
+	// Statistics of the operators of one search run
+	public void recordOperators(OperatorSelector selector) {
+		double[] weights = new double[operatorWeights.length];
+		for (int i = 0; i < weights.length; i++) {
+			operatorUses[i].add(selector.getUses(i));
+			operatorInfeasible[i].add(selector.getInfeasible(i));
+			operatorAccepted[i].add(selector.getAccepted(i));
+			operatorNewBests[i].add(selector.getNewBests(i));
+			operatorNanos[i].add(selector.getNanos(i));
+			operatorImprovements[i].add(selector.getImprovement(i));
+			weights[i] = selector.getWeight(i);
+		}
+		operatorWeights = weights;
+	}
+
+	// Reheats of one search run, and whether it stopped early for lack of
+	// progress
+	public void recordSchedule(int runReheats, boolean stagnated) {
+		reheats.add(runReheats);
+		if (stagnated) {
+			stagnatedRuns.increment();
+		}
+	}
+
+	// Feasible moves of one search run left out by its tabu memory
+	public void recordTabu(long runTabuMoves) {
+		tabuMoves.add(runTabuMoves);
+	}
+
+	public void recordPhase(int phase, long nanos) {
+		phases[phase].record(nanos);
+	}
+
+	// Called once per bid by the agent thread
+	public void recordBid(int runsCompleted, int runsStarted, boolean cutByDeadline, double bestCost) {
+		bids.increment();
+		bidRuns.add(runsStarted);
+		bidRunsCompleted.add(runsCompleted);
+		if (cutByDeadline) {
+			bidsCut.increment();
+		}
+		int index = (int) (nbBestCosts % HISTORY);
+		bestCosts[index] = bestCost;
+		bestCostTimes[index] = (System.nanoTime() - start) / 1000000;
+		nbBestCosts++;
+	}
+
+	@Override
+	public long getRuns() {
+		return runs.sum();
+	}
+
+	@Override
+	public long getIterations() {
+		return iterations.sum();
+	}
+
+	@Override
+	public double getIterationsPerSecond() {
+		long nanos = searchNanos.sum();
+		return nanos == 0 ? 0 : iterations.sum() * 1e9 / nanos;
+	}
+
+	@Override
+	public double getRejectionRate() {
+		long total = moves.sum();
+		return total == 0 ? 0 : (double) infeasibleMoves.sum() / total;
+	}
+
+	@Override
+	public double getAcceptanceRate() {
+		long total = iterations.sum();
+		return total == 0 ? 0 : (double) acceptedMoves.sum() / total;
+	}
+
+	@Override
+	public double getTabuRate() {
+		long total = moves.sum() - infeasibleMoves.sum();
+		return total == 0 ? 0 : (double) tabuMoves.sum() / total;
+	}
+
+	@Override
+	public double getReheatsPerRun() {
+		long total = runs.sum();
+		return total == 0 ? 0 : (double) reheats.sum() / total;
+	}
+
+	@Override
+	public double getStagnationStopRate() {
+		long total = runs.sum();
+		return total == 0 ? 0 : (double) stagnatedRuns.sum() / total;
+	}
+
+	@Override
+	public long getBids() {
+		return bids.sum();
+	}
+
+	@Override
+	public long getBidsCutByDeadline() {
+		return bidsCut.sum();
+	}
+
+	@Override
+	public double getRunsCompletedRate() {
+		long total = bidRuns.sum();
+		return total == 0 ? 0 : (double) bidRunsCompleted.sum() / total;
+	}
+
+	@Override
+	public double[] getBestCosts() {
+		long n = nbBestCosts;
+		int length = (int) Math.min(n, HISTORY);
+		double[] toReturn = new double[length];
+		for (int i = 0; i < length; i++) {
+			toReturn[i] = bestCosts[(int) ((n - length + i) % HISTORY)];
+		}
+		return toReturn;
+	}
+
+	@Override
+	public long[] getBestCostTimes() {
+		long n = nbBestCosts;
+		int length = (int) Math.min(n, HISTORY);
+		long[] toReturn = new long[length];
+		for (int i = 0; i < length; i++) {
+			toReturn[i] = bestCostTimes[(int) ((n - length + i) % HISTORY)];
+		}
+		return toReturn;
+	}
+
+	@Override
+	public String[] getPhases() {
+		return PHASES.clone();
+	}
+
+	@Override
+	public double getLatencyMillis(String phase, double percentile) {
+		for (int i = 0; i < PHASES.length; i++) {
+			if (PHASES[i].equals(phase)) {
+				return phases[i].getPercentile(percentile) / 1e6;
+			}
+		}
+		throw new IllegalArgumentException("Unknown phase " + phase);
+	}
+
+	@Override
+	public String[] getLatencySummary() {
+		String[] toReturn = new String[PHASES.length];
+		for (int i = 0; i < PHASES.length; i++) {
+			LatencyHistogram h = phases[i];
+			toReturn[i] = String.format("%s: count %d, mean %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+					PHASES[i], h.getCount(), h.getMean() / 1e6, h.getPercentile(0.5) / 1e6, h.getPercentile(0.9) / 1e6,
+					h.getPercentile(0.99) / 1e6, h.getMax() / 1e6);
+		}
+		return toReturn;
+	}
+
+	@Override
+	public String[] getOperators() {
+		return Centralized.OPERATORS.clone();
+	}
+
+	@Override
+	public double[] getOperatorTimeShares() {
+		double[] toReturn = new double[operatorNanos.length];
+		long total = 0;
+		for (LongAdder nanos : operatorNanos) {
+			total += nanos.sum();
+		}
+		for (int i = 0; i < toReturn.length; i++) {
+			toReturn[i] = total == 0 ? 0 : (double) operatorNanos[i].sum() / total;
+		}
+		return toReturn;
+	}
+
+	@Override
+	public double[] getOperatorWeights() {
+		return operatorWeights.clone();
+	}
+
+	@Override
+	public String[] getOperatorSummary() {
+		String[] toReturn = new String[Centralized.OPERATORS.length];
+		for (int i = 0; i < toReturn.length; i++) {
+			long uses = operatorUses[i].sum();
+			toReturn[i] = String.format("%s: uses %d, infeasible %d, accepted %.3f, new bests %d, improvement/use %.2f, mean %.2f us",
+					Centralized.OPERATORS[i], uses, operatorInfeasible[i].sum(),
+					uses == 0 ? 0 : (double) operatorAccepted[i].sum() / uses, operatorNewBests[i].sum(),
+					uses == 0 ? 0 : operatorImprovements[i].sum() / uses,
+					uses == 0 ? 0 : operatorNanos[i].sum() / 1e3 / uses);
+		}
+		return toReturn;
+	}
+
+}
@@ -0,0 +1,63 @@
+package template;
+
+/**
+ * What SolverMetrics shows through JMX (e.g. in jconsole). Durations are in
+ * milliseconds, rates between 0 and 1.
+ */
+public interface SolverMetricsMBean {
+
+	long getRuns();
+
+	long getIterations();
+
+	// Iterations per second of search, over all the threads
+	double getIterationsPerSecond();
+
+	// Fraction of the sampled moves that were not feasible
+	double getRejectionRate();
+
+	// Fraction of the iterations whose move was accepted
+	double getAcceptanceRate();
+
+	// Fraction of the feasible moves that led back to a recent solution
+	double getTabuRate();
+
+	double getReheatsPerRun();
+
+	// Fraction of the runs that stopped before their budget, without a new
+	// best solution for their stagnation window
+	double getStagnationStopRate();
+
+	long getBids();
+
+	long getBidsCutByDeadline();
+
+	// Fraction of the runs of a bid that finished before its deadline
+	double getRunsCompletedRate();
+
+	// Best costs found for the last bids, with their times since setup
+	double[] getBestCosts();
+
+	long[] getBestCostTimes();
+
+	String[] getPhases();
+
+	double getLatencyMillis(String phase, double percentile);
+
+	// One line per phase: count, mean, p50, p90, p99 and max
+	String[] getLatencySummary();
+
+	// Operators of the search (see Centralized)
+	String[] getOperators();
+
+	// Fraction of the time of the operators spent in each of them
+	double[] getOperatorTimeShares();
+
+	// Weights of the operators at the end of the last run
+	double[] getOperatorWeights();
+
+	// One line per operator: uses, acceptance, new bests, improvement per use
+	// and mean time
+	String[] getOperatorSummary();
+
+}
@@ -0,0 +1,77 @@
+package template;
+
+/**
+ * Exchange the stops at two positions of the route of one vehicle.
+ */
+public class SwapMove extends Move {
+
+	private int vehicleIdx;
+	private int low;
+	private int high;
+
+	public void set(int vehicleIdx, int firstPos, int secondPos) {
+		this.vehicleIdx = vehicleIdx;
+		this.low = Math.min(firstPos, secondPos);
+		this.high = Math.max(firstPos, secondPos);
+	}
+
+	@Override
+	public boolean evaluate(Solution solution) {
+		int v = vehicleIdx;
+		int lowTask = solution.getStopAt(v, low);
+		int highTask = solution.getStopAt(v, high);
+
+		// A pickup cannot go after its delivery and conversely
+		if (Solution.isPickup(lowTask) && solution.getPositionOf(Solution.pairOf(lowTask)) <= high) {
+			return false;
+		}
+		if (!Solution.isPickup(highTask) && solution.getPositionOf(Solution.pairOf(highTask)) >= low) {
+			return false;
+		}
+
+		// The load changes only between the two positions
+		int change = solution.getLoadChange(highTask) - solution.getLoadChange(lowTask);
+		if (change > 0 && !solution.canCarry(v, low, high - 1, change)) {
+			return false;
+		}
+
+		int before = low == 0 ? Solution.NONE : solution.getStopAt(v, low - 1);
+		int after = high == solution.getTaskNumber(v) - 1 ? Solution.NONE : solution.getStopAt(v, high + 1);
+		if (high == low + 1) {
+			delta = solution.travelCost(v, before, highTask) + solution.travelCost(v, highTask, lowTask)
+					+ solution.travelCost(v, lowTask, after)
+					- solution.travelCost(v, before, lowTask) - solution.travelCost(v, lowTask, highTask)
+					- solution.travelCost(v, highTask, after);
+			fingerprint = solution.getFingerprint() ^ solution.edgeKey(v, before, highTask)
+					^ solution.edgeKey(v, highTask, lowTask) ^ solution.edgeKey(v, lowTask, after)
+					^ solution.edgeKey(v, before, lowTask) ^ solution.edgeKey(v, lowTask, highTask)
+					^ solution.edgeKey(v, highTask, after);
+		}
+		else {
+			int lowNext = solution.getStopAt(v, low + 1);
+			int highPrevious = solution.getStopAt(v, high - 1);
+			delta = solution.travelCost(v, before, highTask) + solution.travelCost(v, highTask, lowNext)
+					+ solution.travelCost(v, highPrevious, lowTask) + solution.travelCost(v, lowTask, after)
+					- solution.travelCost(v, before, lowTask) - solution.travelCost(v, lowTask, lowNext)
+					- solution.travelCost(v, highPrevious, highTask) - solution.travelCost(v, highTask, after);
+			fingerprint = solution.getFingerprint() ^ solution.edgeKey(v, before, highTask)
+					^ solution.edgeKey(v, highTask, lowNext) ^ solution.edgeKey(v, highPrevious, lowTask)
+					^ solution.edgeKey(v, lowTask, after) ^ solution.edgeKey(v, before, lowTask)
+					^ solution.edgeKey(v, lowTask, lowNext) ^ solution.edgeKey(v, highPrevious, highTask)
+					^ solution.edgeKey(v, highTask, after);
+		}
+		return true;
+	}
+
+	@Override
+	public void apply(Solution solution) {
+		// Remove the last one first so that the position of the other does not move
+		int lowTask = solution.getStopAt(vehicleIdx, low);
+		int highTask = solution.getStopAt(vehicleIdx, high);
+		solution.removeTaskForVehicle(vehicleIdx, highTask);
+		solution.removeTaskForVehicle(vehicleIdx, lowTask);
+		solution.addTaskForVehicle(vehicleIdx, highTask, low);
+		solution.addTaskForVehicle(vehicleIdx, lowTask, high);
+	}
+
+}
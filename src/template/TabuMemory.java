@@ -0,0 +1,40 @@
+package template;
+
+/**
+ * Short-term memory of a search: the fingerprints (see Solution) of the last
+ * solutions it went through. A move leading back to one of them is not
+ * proposed, which stops the search from undoing its last moves (swapping two
+ * stops back and forth) and from evaluating the same neighbors again.
+ *
+ * The memory is a ring of a few dozen fingerprints, scanned linearly: that is
+ * cheaper than hashing for this size. One memory is used by one search.
+ */
+public class TabuMemory {
+
+	private final long[] fingerprints;
+	private int size = 0;
+	private int next = 0;
+
+	public TabuMemory(int tenure) {
+		this.fingerprints = new long[tenure];
+	}
+
+	// Remember a solution, forgetting the oldest one if the memory is full
+	public void add(long fingerprint) {
+		fingerprints[next] = fingerprint;
+		next = next == fingerprints.length - 1 ? 0 : next + 1;
+		if (size < fingerprints.length) {
+			size++;
+		}
+	}
+
+	public boolean contains(long fingerprint) {
+		for (int i = 0; i < size; i++) {
+			if (fingerprints[i] == fingerprint) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,73 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import logist.task.Task;
+
+/**
+ * The tasks auctioned so far, indexed by their id, and who won each of them.
+ * Each agent owns a bitset of task ids, so that adding a won task and listing
+ * the tasks of an agent (in increasing id order, as the slots of an Instance)
+ * never scan the other tasks.
+ */
+public class TaskRegistry {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private Task[] tasks = new Task[INITIAL_CAPACITY];
+	private BitSet[] owned = new BitSet[0];
+
+	public void register(Task task) {
+		if (task.id >= tasks.length) {
+			tasks = Arrays.copyOf(tasks, Math.max(2 * tasks.length, task.id + 1));
+		}
+		tasks[task.id] = task;
+	}
+
+	// The agent won the task
+	public void setOwner(Task task, int agentId) {
+		register(task);
+		ownedBy(agentId).set(task.id);
+	}
+
+	public int getTaskNumber(int agentId) {
+		return agentId < owned.length ? owned[agentId].cardinality() : 0;
+	}
+
+	// Tasks of the agent and the extra one (if not null), by increasing id
+	public List<Task> getTasksWith(int agentId, Task extra) {
+		List<Task> toReturn = new ArrayList<Task>(getTaskNumber(agentId) + 1);
+		boolean extraAdded = extra == null;
+		if (agentId < owned.length) {
+			BitSet ids = owned[agentId];
+			for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+				if (!extraAdded && extra.id <= id) {
+					if (extra.id < id) {
+						toReturn.add(extra);
+					}
+					extraAdded = true;
+				}
+				toReturn.add(tasks[id]);
+			}
+		}
+		if (!extraAdded) {
+			toReturn.add(extra);
+		}
+		return toReturn;
+	}
+
+	private BitSet ownedBy(int agentId) {
+		if (agentId >= owned.length) {
+			int length = owned.length;
+			owned = Arrays.copyOf(owned, agentId + 1);
+			for (int i = length; i < owned.length; i++) {
+				owned[i] = new BitSet();
+			}
+		}
+		return owned[agentId];
+	}
+
+}
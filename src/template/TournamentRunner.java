@@ -0,0 +1,360 @@
+package template;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Plays auction games between the agents of config/agents.xml without the UI,
+ * many at a time, and reports for each agent its profit, how often it beat its
+ * opponent, how long its bids took and how fast it searched.
+ *
+ * The logist platform keeps its settings in static state, so each game is a
+ * logist process of its own, the processes running in parallel. For every
+ * configuration we generate a copy of its settings with the UI off, and of its
+ * agents wrapped in a MeasuredAuctionBehavior, which prints the results we
+ * parse. Every pair of agents plays each configuration with every seed, in
+ * both orders.
+ *
+ * The agents search on several cores, so the games share them: each agent
+ * gets a number of solver threads (see MultiStartSearch), DEFAULT_THREADS
+ * unless given, and as many games run at a time as fit on the cores, two
+ * agents each. If only the number of games at a time is given, each agent gets
+ * cores / (2 * parallel) threads (at least one).
+ *
+ * A game that does not end in time is killed. Unless given, the time allowed
+ * is what the timeouts of its settings let both agents take: the setup, a bid
+ * for every task and the plan, with a margin.
+ *
+ * Usage: java template.TournamentRunner [-logist logist.jar] [-agents a,b,...]
+ * [-configs c1.xml,c2.xml] [-games n] [-seed s] [-parallel n] [-threads n]
+ * [-bid-timeout ms] [-game-timeout s]
+ */
+public class TournamentRunner {
+
+	private static final String[] CONFIGS = { "config/auction.xml", "config/auction2.xml" };
+
+	// Solver threads of each agent by default
+	private static final int DEFAULT_THREADS = 2;
+	// Time a game may take on top of its timeouts (starting logist), in s
+	private static final long GAME_MARGIN = 60;
+
+	private String logistJar = "../logist/logist.jar";
+	private List<String> agents = new ArrayList<String>();
+	private List<String> configs = new ArrayList<String>(Arrays.asList(CONFIGS));
+	private int nbGames = 10;
+	private long seed = 0;
+	private int parallelism = -1;
+	private int threads = -1;
+	private long bidTimeout = -1;
+	private long gameTimeout = -1;
+
+	private final File workDir = new File(".").getAbsoluteFile();
+	private File tmpDir;
+
+	// Results of one agent in one game, as printed by MeasuredAuctionBehavior
+	private static class Result {
+		String agent;
+		long profit;
+		long bidMeanMs;
+		long bidMaxMs;
+		long iterPerSec;
+	}
+
+	// Totals of an agent over the tournament
+	private static class Score {
+		int games = 0;
+		int wins = 0;
+		int failures = 0;
+		long profit = 0;
+		long bidMeanMs = 0;
+		long bidMaxMs = 0;
+		long iterPerSec = 0;
+	}
+
+	public static void main(String[] args) throws Exception {
+		TournamentRunner runner = new TournamentRunner();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-logist")) {
+				runner.logistJar = args[++i];
+			}
+			else if (args[i].equals("-agents")) {
+				runner.agents = Arrays.asList(args[++i].split(","));
+			}
+			else if (args[i].equals("-configs")) {
+				runner.configs = Arrays.asList(args[++i].split(","));
+			}
+			else if (args[i].equals("-games")) {
+				runner.nbGames = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-seed")) {
+				runner.seed = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("-parallel")) {
+				runner.parallelism = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-threads")) {
+				runner.threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-bid-timeout")) {
+				runner.bidTimeout = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("-game-timeout")) {
+				runner.gameTimeout = Long.parseLong(args[++i]);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		}
+		runner.run();
+	}
+
+	public void run() throws Exception {
+		tmpDir = File.createTempFile("tournament", "");
+		if (!tmpDir.delete() || !tmpDir.mkdir()) {
+			throw new IOException("Cannot create " + tmpDir);
+		}
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		if (threads <= 0) {
+			threads = parallelism <= 0 ? DEFAULT_THREADS : Math.max(1, cores / (2 * parallelism));
+		}
+		if (parallelism <= 0) {
+			parallelism = Math.max(1, cores / (2 * threads));
+		}
+
+		// One game per configuration, seed and ordered pair of agents, and the
+		// time each one may take
+		List<String[]> games = new ArrayList<String[]>();
+		List<Long> timeouts = new ArrayList<Long>();
+		SplittableRandom seeds = new SplittableRandom(seed);
+		for (int c = 0; c < configs.size(); c++) {
+			Document config = read(new File(configs.get(c)));
+			Element settings = (Element) config.getElementsByTagName("settings").item(0);
+			Element agentsImport = (Element) config.getElementsByTagName("agents").item(0);
+			File settingsCopy = writeSettings(c, new File(settings.getAttribute("import")));
+			settings.setAttribute("import", settingsCopy.getPath());
+			List<String> names = new ArrayList<String>();
+			agentsImport.setAttribute("import", writeAgents(c, new File(agentsImport.getAttribute("import")), names));
+			if (agents.isEmpty()) {
+				agents = names;
+			}
+
+			Element tasks = (Element) config.getElementsByTagName("tasks").item(0);
+			long timeout = gameTimeout > 0 ? gameTimeout
+					: gameTimeoutOf(settingsCopy, Integer.parseInt(tasks.getAttribute("number")));
+			for (int g = 0; g < nbGames; g++) {
+				tasks.setAttribute("rngSeed", String.valueOf(seeds.nextLong()));
+				File file = new File(tmpDir, "config" + c + "-" + g + ".xml");
+				write(config, file);
+				for (String first : agents) {
+					for (String second : agents) {
+						if (!first.equals(second)) {
+							games.add(new String[] { file.getPath(), first, second });
+							timeouts.add(timeout);
+						}
+					}
+				}
+			}
+		}
+
+		System.out.println("Playing " + games.size() + " games, " + parallelism + " at a time, with " + threads
+				+ " solver threads per agent");
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		List<Future<List<Result>>> futures = new ArrayList<Future<List<Result>>>();
+		for (int i = 0; i < games.size(); i++) {
+			final String[] game = games.get(i);
+			final long timeout = timeouts.get(i);
+			final File log = new File(tmpDir, "game" + i + ".log");
+			futures.add(pool.submit(() -> play(game[0], game[1], game[2], timeout, log)));
+		}
+
+		Map<String, Score> scores = new LinkedHashMap<String, Score>();
+		for (String agent : agents) {
+			scores.put(agent, new Score());
+		}
+		for (int i = 0; i < games.size(); i++) {
+			List<Result> results = futures.get(i).get();
+			Score first = scores.get(games.get(i)[1]);
+			Score second = scores.get(games.get(i)[2]);
+			if (results.size() != 2) {
+				first.failures++;
+				second.failures++;
+				continue;
+			}
+			for (Result result : results) {
+				Score score = scores.get(result.agent);
+				score.games++;
+				score.profit += result.profit;
+				score.bidMeanMs += result.bidMeanMs;
+				score.bidMaxMs = Math.max(score.bidMaxMs, result.bidMaxMs);
+				score.iterPerSec += result.iterPerSec;
+			}
+			long difference = results.get(0).profit - results.get(1).profit;
+			if (difference != 0) {
+				scores.get(results.get(difference > 0 ? 0 : 1).agent).wins++;
+			}
+		}
+		pool.shutdown();
+		double hours = (System.nanoTime() - start) / 3.6e12;
+
+		System.out.printf("%-22s %6s %6s %8s %14s %12s %12s %12s%n", "agent", "games", "wins", "failed", "mean profit",
+				"bid mean ms", "bid max ms", "iter/s");
+		for (Map.Entry<String, Score> entry : scores.entrySet()) {
+			Score score = entry.getValue();
+			int played = Math.max(1, score.games);
+			System.out.printf("%-22s %6d %6d %8d %14d %12d %12d %12d%n", entry.getKey(), score.games, score.wins,
+					score.failures, score.profit / played, score.bidMeanMs / played, score.bidMaxMs,
+					score.iterPerSec / played);
+		}
+		System.out.printf("%d games in %.1f min (%.0f games per hour)%n", games.size(), hours * 60, games.size() / hours);
+	}
+
+	// Run one game, killed after timeout seconds, and return the results of
+	// both agents, empty if it failed. The output goes to a log file, kept for
+	// failed games
+	private List<Result> play(String config, String first, String second, long timeout, File log)
+			throws Exception {
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		Process process = new ProcessBuilder(java, "-D" + MultiStartSearch.PARALLELISM_PROPERTY + "=" + threads,
+				"-jar", logistJar, config, first, second).directory(workDir)
+				.redirectErrorStream(true).redirectOutput(log).start();
+
+		List<Result> results = new ArrayList<Result>();
+		if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+			process.destroyForcibly();
+			System.out.println("Game " + log + " timed out");
+			return results;
+		}
+
+		BufferedReader reader = new BufferedReader(new FileReader(log));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(MeasuredAuctionBehavior.RESULT_PREFIX + " ")) {
+					results.add(parse(line));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (results.size() == 2) {
+			log.delete();
+		}
+		else {
+			System.out.println("Game " + log + " failed");
+		}
+		return results;
+	}
+
+	private static Result parse(String line) {
+		Map<String, String> fields = new HashMap<String, String>();
+		for (String field : line.split(" ")) {
+			int equals = field.indexOf('=');
+			if (equals > 0) {
+				fields.put(field.substring(0, equals), field.substring(equals + 1));
+			}
+		}
+		Result result = new Result();
+		result.agent = fields.get("agent");
+		result.profit = Long.parseLong(fields.get("profit"));
+		result.bidMeanMs = Long.parseLong(fields.get("bidMeanMs"));
+		result.bidMaxMs = Long.parseLong(fields.get("bidMaxMs"));
+		result.iterPerSec = Long.parseLong(fields.get("iterPerSec"));
+		return result;
+	}
+
+	// Copy of the settings without the UI, and with the bid timeout if given
+	private File writeSettings(int index, File file) throws Exception {
+		Document settings = read(file);
+		NodeList sets = settings.getElementsByTagName("set");
+		for (int i = 0; i < sets.getLength(); i++) {
+			Element set = (Element) sets.item(i);
+			if (set.hasAttribute("flag-show-ui")) {
+				set.setAttribute("flag-show-ui", "false");
+			}
+			if (bidTimeout > 0 && set.hasAttribute("timeout-bid")) {
+				set.setAttribute("timeout-bid", String.valueOf(bidTimeout));
+			}
+		}
+		File copy = new File(tmpDir, "settings" + index + ".xml");
+		write(settings, copy);
+		return copy;
+	}
+
+	// Longest a game of the given settings can take, in s: both agents may use
+	// all of their setup, bid and plan timeouts (in ms)
+	private static long gameTimeoutOf(File settingsFile, int nbTasks) throws Exception {
+		long setup = 0;
+		long bid = 0;
+		long plan = 0;
+		NodeList sets = read(settingsFile).getElementsByTagName("set");
+		for (int i = 0; i < sets.getLength(); i++) {
+			Element set = (Element) sets.item(i);
+			if (set.hasAttribute("timeout-setup")) {
+				setup = Long.parseLong(set.getAttribute("timeout-setup"));
+			}
+			if (set.hasAttribute("timeout-bid")) {
+				bid = Long.parseLong(set.getAttribute("timeout-bid"));
+			}
+			if (set.hasAttribute("timeout-plan")) {
+				plan = Long.parseLong(set.getAttribute("timeout-plan"));
+			}
+		}
+		return 2 * (setup + nbTasks * bid + plan) / 1000 + GAME_MARGIN;
+	}
+
+	// Copy of the agents, each one wrapped in a MeasuredAuctionBehavior
+	private String writeAgents(int index, File file, List<String> names) throws Exception {
+		Document agentsFile = read(file);
+		NodeList agentList = agentsFile.getElementsByTagName("agent");
+		for (int i = 0; i < agentList.getLength(); i++) {
+			Element agent = (Element) agentList.item(i);
+			names.add(agent.getAttribute("name"));
+			NodeList sets = agent.getElementsByTagName("set");
+			for (int j = 0; j < sets.getLength(); j++) {
+				Element set = (Element) sets.item(j);
+				if (set.hasAttribute("class-name")) {
+					Element delegate = agentsFile.createElement("set");
+					delegate.setAttribute("delegate-class", set.getAttribute("class-name"));
+					agent.appendChild(delegate);
+					set.setAttribute("class-name", MeasuredAuctionBehavior.class.getName());
+				}
+			}
+		}
+		File copy = new File(tmpDir, "agents" + index + ".xml");
+		write(agentsFile, copy);
+		return copy.getPath();
+	}
+
+	private static Document read(File file) throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+	}
+
+	private static void write(Document document, File file) throws Exception {
+		TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(file));
+	}
+
+}
@@ -0,0 +1,73 @@
+package template;
+
+/**
+ * Take a task (pickup and delivery) from one vehicle and give it to another,
+ * which handles it before anything else.
+ */
+public class TransferMove extends Move {
+
+	private int fromVehicle;
+	private int toVehicle;
+	private int slot;
+
+	public void set(int fromVehicle, int toVehicle, int slot) {
+		this.fromVehicle = fromVehicle;
+		this.toVehicle = toVehicle;
+		this.slot = slot;
+	}
+
+	@Override
+	public boolean evaluate(Solution solution) {
+		Instance instance = solution.getInstance();
+		if (instance.getWeight(slot) > instance.getCapacity(toVehicle)) {
+			return false;
+		}
+
+		int pickup = Solution.pickupOf(slot);
+		int delivery = Solution.deliveryOf(slot);
+		int v = fromVehicle;
+
+		// Removal from the first vehicle
+		int before = solution.getPrevious(pickup);
+		int after = solution.getNext(delivery);
+		if (solution.getNext(pickup) == delivery) {
+			delta = solution.travelCost(v, before, after)
+					- solution.travelCost(v, before, pickup) - solution.travelCost(v, pickup, delivery)
+					- solution.travelCost(v, delivery, after);
+			fingerprint = solution.getFingerprint() ^ solution.edgeKey(v, before, after)
+					^ solution.edgeKey(v, before, pickup) ^ solution.edgeKey(v, pickup, delivery)
+					^ solution.edgeKey(v, delivery, after);
+		}
+		else {
+			int pickupNext = solution.getNext(pickup);
+			int deliveryPrevious = solution.getPrevious(delivery);
+			delta = solution.travelCost(v, before, pickupNext) + solution.travelCost(v, deliveryPrevious, after)
+					- solution.travelCost(v, before, pickup) - solution.travelCost(v, pickup, pickupNext)
+					- solution.travelCost(v, deliveryPrevious, delivery) - solution.travelCost(v, delivery, after);
+			fingerprint = solution.getFingerprint() ^ solution.edgeKey(v, before, pickupNext)
+					^ solution.edgeKey(v, deliveryPrevious, after) ^ solution.edgeKey(v, before, pickup)
+					^ solution.edgeKey(v, pickup, pickupNext) ^ solution.edgeKey(v, deliveryPrevious, delivery)
+					^ solution.edgeKey(v, delivery, after);
+		}
+
+		// Insertion at the head of the second one
+		int w = toVehicle;
+		int first = solution.getTaskNumber(w) == 0 ? Solution.NONE : solution.getStopAt(w, 0);
+		delta += solution.travelCost(w, Solution.NONE, pickup) + solution.travelCost(w, pickup, delivery)
+				+ solution.travelCost(w, delivery, first) - solution.travelCost(w, Solution.NONE, first);
+		fingerprint ^= solution.edgeKey(w, Solution.NONE, pickup) ^ solution.edgeKey(w, pickup, delivery)
+				^ solution.edgeKey(w, delivery, first) ^ solution.edgeKey(w, Solution.NONE, first);
+		return true;
+	}
+
+	@Override
+	public void apply(Solution solution) {
+		int pickup = Solution.pickupOf(slot);
+		int delivery = Solution.deliveryOf(slot);
+		solution.removeTaskForVehicle(fromVehicle, pickup);
+		solution.removeTaskForVehicle(fromVehicle, delivery);
+		solution.addTaskForVehicle(toVehicle, delivery, 0);
+		solution.addTaskForVehicle(toVehicle, pickup, 0);
+	}
+
+}
@@ -0,0 +1,93 @@
+package template;
+
+/**
+ * Reverse a segment of the route of one vehicle (2-opt). The costs between two
+ * cities are the same both ways, so only the two edges at the ends of the
+ * segment change and the delta is O(1).
+ *
+ * A segment holding both stops of a task cannot be reversed, its delivery
+ * would come first: getMaxEnd gives the end of the longest segment starting at
+ * a position that holds no such pair, so that only the capacity can make a
+ * sampled move infeasible.
+ */
+public class TwoOptMove extends Move {
+
+	private int vehicleIdx;
+	private int from;
+	private int to;
+
+	private int[] segment = new int[0];
+
+	public void set(int vehicleIdx, int from, int to) {
+		this.vehicleIdx = vehicleIdx;
+		this.from = from;
+		this.to = to;
+	}
+
+	// Last position (at most maxLength - 1 after the start) a segment starting
+	// at this position can end at, the start itself if none
+	public static int getMaxEnd(Solution solution, int vehicleIdx, int from, int maxLength) {
+		int end = from;
+		int limit = Math.min(solution.getTaskNumber(vehicleIdx) - 1, from + maxLength - 1);
+		while (end < limit) {
+			int stop = solution.getStopAt(vehicleIdx, end + 1);
+			if (!Solution.isPickup(stop) && solution.getPositionOf(Solution.pairOf(stop)) >= from) {
+				break;
+			}
+			end++;
+		}
+		return end;
+	}
+
+	@Override
+	public boolean evaluate(Solution solution) {
+		int v = vehicleIdx;
+
+		// Capacity: the loads change inside the segment only, the stops being
+		// done in the reverse order from the same load
+		int capacity = solution.getInstance().getCapacity(v);
+		int load = solution.getLoadAfter(v, from - 1);
+		for (int pos = to; pos > from; pos--) {
+			load += solution.getLoadChange(solution.getStopAt(v, pos));
+			if (load > capacity) {
+				return false;
+			}
+		}
+
+		int first = solution.getStopAt(v, from);
+		int last = solution.getStopAt(v, to);
+		int before = from == 0 ? Solution.NONE : solution.getStopAt(v, from - 1);
+		int after = to == solution.getTaskNumber(v) - 1 ? Solution.NONE : solution.getStopAt(v, to + 1);
+		delta = solution.travelCost(v, before, last) + solution.travelCost(v, first, after)
+				- solution.travelCost(v, before, first) - solution.travelCost(v, last, after);
+
+		// The edges inside the segment change direction
+		fingerprint = solution.getFingerprint() ^ solution.edgeKey(v, before, last)
+				^ solution.edgeKey(v, first, after) ^ solution.edgeKey(v, before, first)
+				^ solution.edgeKey(v, last, after);
+		int previous = first;
+		for (int pos = from + 1; pos <= to; pos++) {
+			int stop = solution.getStopAt(v, pos);
+			fingerprint ^= solution.edgeKey(v, previous, stop) ^ solution.edgeKey(v, stop, previous);
+			previous = stop;
+		}
+		return true;
+	}
+
+	@Override
+	public void apply(Solution solution) {
+		int v = vehicleIdx;
+		int length = to - from + 1;
+		if (segment.length < length) {
+			segment = new int[2 * length];
+		}
+		for (int i = 0; i < length; i++) {
+			segment[i] = solution.getStopAt(v, from);
+			solution.removeTaskForVehicle(v, segment[i]);
+		}
+		for (int i = 0; i < length; i++) {
+			solution.addTaskForVehicle(v, segment[length - 1 - i], from + i);
+		}
+	}
+
+}